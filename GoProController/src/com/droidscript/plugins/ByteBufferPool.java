@@ -0,0 +1,82 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview Pool of reusable response body buffers.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+
+public class ByteBufferPool
+{
+	// Large enough for every status and info response the camera sends
+	public static int BUFFER_SIZE = 512;
+	private static int MAX_POOLED_BUFFERS = 16;
+
+	private static ByteBufferPool s_instance = new ByteBufferPool();
+
+	private LinkedList<ByteBuffer> m_free = new LinkedList<ByteBuffer>();
+
+	public static ByteBufferPool getInstance()
+	{
+		return s_instance;
+	}
+
+	// Returns a cleared heap buffer of at least minCapacity bytes.
+	// Buffers larger than BUFFER_SIZE are one-offs and are not pooled.
+	public ByteBuffer acquire(int minCapacity)
+	{
+		if(minCapacity <= BUFFER_SIZE)
+		{
+			synchronized(this)
+			{
+				if(!m_free.isEmpty())
+				{
+					ByteBuffer buffer = m_free.removeFirst();
+					buffer.clear();
+					return buffer;
+				}
+			}
+
+			return ByteBuffer.allocate(BUFFER_SIZE);
+		}
+
+		return ByteBuffer.allocate(minCapacity);
+	}
+
+	public void release(ByteBuffer buffer)
+	{
+		if(buffer == null || buffer.capacity() != BUFFER_SIZE)
+		{
+			return;
+		}
+
+		synchronized(this)
+		{
+			if(m_free.size() < MAX_POOLED_BUFFERS)
+			{
+				m_free.addFirst(buffer);
+			}
+		}
+	}
+}
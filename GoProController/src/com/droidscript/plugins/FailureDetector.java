@@ -0,0 +1,194 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview Decides from the bacpac polls whether a camera is still there.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+// Counts misses over the last few heartbeats (polls and answered commands) rather than
+// giving up on the first one, since a busy Wifi link drops the odd request. A single miss
+// makes the camera suspected. Misses or heartbeats much slower than usual in the recent
+// window make it degraded. It's only lost after several misses in a row spanning the lost
+// timeout, and a heartbeat brings it straight back.
+public class FailureDetector
+{
+	public enum Health
+	{
+		ALIVE("Alive"),			// Answering normally
+		SUSPECTED("Suspected"),	// Missed the last heartbeat
+		DEGRADED("Degraded"),	// Answering, but missing or slow too often recently
+		LOST("Lost");			// Gone, needs reconnecting
+
+		private String m_label;
+
+		private Health(String label)
+		{
+			m_label = label;
+		}
+
+		// The name scripts see
+		public String getLabel()
+		{
+			return m_label;
+		}
+	}
+
+	public static int DEFAULT_LOST_MISSES = 3;
+	public static long DEFAULT_LOST_TIMEOUT = 10000;
+	public static int DEFAULT_WINDOW = 10;
+	public static int DEFAULT_DEGRADED_COUNT = 3;
+
+	private static int OK = 0;
+	private static int LATE = 1;
+	private static int MISS = 2;
+
+	// A heartbeat slower than the mean by this many deviations is late
+	private static double LATE_DEVIATIONS = 4;
+
+	private int m_lostMisses;
+	private long m_lostTimeout;
+	private int m_degradedCount;
+
+	private int[] m_window;
+	private int m_next = 0;
+	private int m_consecutiveMisses = 0;
+	private long m_lastHeartbeat;
+	private double m_meanLatency = -1;
+	private double m_latencyDeviation = 0;
+	private Health m_health = Health.ALIVE;
+
+	public FailureDetector()
+	{
+		this(DEFAULT_LOST_MISSES, DEFAULT_LOST_TIMEOUT, DEFAULT_WINDOW, DEFAULT_DEGRADED_COUNT);
+	}
+
+	public FailureDetector(int lostMisses, long lostTimeout, int window, int degradedCount)
+	{
+		m_lostMisses = Math.max(1, lostMisses);
+		m_lostTimeout = lostTimeout;
+		m_window = new int[Math.max(1, window)];
+		m_degradedCount = Math.max(1, degradedCount);
+
+		reset();
+	}
+
+	// Start again with a camera that has just connected
+	public synchronized void reset()
+	{
+		for(int i = 0; i < m_window.length; ++i)
+		{
+			m_window[i] = OK;
+		}
+
+		m_consecutiveMisses = 0;
+		m_lastHeartbeat = System.currentTimeMillis();
+		m_meanLatency = -1;
+		m_latencyDeviation = 0;
+		m_health = Health.ALIVE;
+	}
+
+	// The camera answered in latency milliseconds. Returns the new health.
+	public synchronized Health onHeartbeat(long latency)
+	{
+		boolean late = m_meanLatency >= 0 && latency > m_meanLatency + LATE_DEVIATIONS * Math.max(m_latencyDeviation, 1);
+
+		// Smoothed like TCP's round trip time estimate
+		if(m_meanLatency < 0)
+		{
+			m_meanLatency = latency;
+			m_latencyDeviation = latency / 2.0;
+		}
+		else
+		{
+			m_latencyDeviation = 0.75 * m_latencyDeviation + 0.25 * Math.abs(latency - m_meanLatency);
+			m_meanLatency = 0.875 * m_meanLatency + 0.125 * latency;
+		}
+
+		record(late ? LATE : OK);
+		m_consecutiveMisses = 0;
+		m_lastHeartbeat = System.currentTimeMillis();
+
+		m_health = (countRecent() >= m_degradedCount) ? Health.DEGRADED : Health.ALIVE;
+		return m_health;
+	}
+
+	// The camera answered a command, which shows it's there without saying how quickly it
+	// usually answers polls. Returns the new health.
+	public synchronized Health onAnswered()
+	{
+		if(m_health == Health.LOST)
+		{
+			return m_health; // Only a reconnect brings it back
+		}
+
+		m_consecutiveMisses = 0;
+		m_lastHeartbeat = System.currentTimeMillis();
+
+		m_health = (countRecent() >= m_degradedCount) ? Health.DEGRADED : Health.ALIVE;
+		return m_health;
+	}
+
+	// The camera didn't answer a poll. Returns the new health.
+	public synchronized Health onMiss()
+	{
+		record(MISS);
+		m_consecutiveMisses++;
+
+		if(m_consecutiveMisses >= m_lostMisses && System.currentTimeMillis() - m_lastHeartbeat >= m_lostTimeout)
+		{
+			m_health = Health.LOST;
+		}
+		else
+		{
+			m_health = Health.SUSPECTED;
+		}
+
+		return m_health;
+	}
+
+	public synchronized Health getHealth()
+	{
+		return m_health;
+	}
+
+	private void record(int outcome)
+	{
+		m_window[m_next] = outcome;
+		m_next = (m_next + 1) % m_window.length;
+	}
+
+	// Misses and late heartbeats in the window
+	private int countRecent()
+	{
+		int count = 0;
+
+		for(int outcome : m_window)
+		{
+			if(outcome != OK)
+			{
+				count++;
+			}
+		}
+
+		return count;
+	}
+}
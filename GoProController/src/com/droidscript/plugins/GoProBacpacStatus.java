@@ -37,15 +37,15 @@ public class GoProBacpacStatus
 	private boolean m_ready = false;
 	private boolean m_powerOn = false;
 	
-	public GoProBacpacStatus(int[] statusBytes)
+	public GoProBacpacStatus(UnsignedByteView statusBytes)
 	{
 		initialiseFromBytes(statusBytes);
 	}
 	
-	public void initialiseFromBytes(int[] statusBytes)
+	public void initialiseFromBytes(UnsignedByteView statusBytes)
 	{
-		m_powerOn = (statusBytes[StatusBytes.POWER] == 1);
-		m_ready = (statusBytes[StatusBytes.READY] == 1);
+		m_powerOn = (statusBytes.get(StatusBytes.POWER) == 1);
+		m_ready = (statusBytes.get(StatusBytes.READY) == 1);
 	}
 	
 	public boolean isReady()
@@ -24,12 +24,19 @@
 
 package com.droidscript.plugins;
 
+import java.io.IOException;
 import java.net.HttpURLConnection;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.droidscript.plugins.GoProDefinitions.AutoPowerOff;
 import com.droidscript.plugins.GoProDefinitions.BurstRate;
@@ -40,6 +47,8 @@ import com.droidscript.plugins.GoProDefinitions.Orientation;
 import com.droidscript.plugins.GoProDefinitions.PhotoMode;
 import com.droidscript.plugins.GoProDefinitions.VideoMode;
 import com.droidscript.plugins.GoProDefinitions.VideoStandard;
+import com.droidscript.plugins.LatencyTracker.RequestClass;
+import com.droidscript.plugins.PriorityDispatcher.Priority;
 
 import android.util.Log;
 
@@ -80,905 +89,2480 @@ public class GoProCamera
 	};	
 	
 	private static String TAG = "GoProCamera";
-	private ExecutorService m_executor;
+	private PriorityDispatcher m_dispatcher;
 	private GoProCameraListener m_listener;
-	private String m_ipAddress;
-	private String m_wifiPassword;
-	private String m_wifiName;
-	private GoProBacpacStatus m_bacpacStatus;
-	private Timer m_bacpacStatusTimer;
-	private GoProCameraInfo m_cameraInfo;
+	private volatile String m_ipAddress;
+	private volatile String m_wifiPassword;
+	private GoProScheduler.Registration m_scheduler = GoProScheduler.getInstance().register();
+	private PollSchedule m_pollSchedule = new PollSchedule();
+	private volatile Object m_pollChain; // Identifies the current run of polls, null when not polling
 	
-	private static int BACPAC_STATUS_POLL_INTERVAL = 2000;
+	// Whether the camera is still there, from the polls and commands it answers
+	private FailureDetector m_failureDetector = new FailureDetector();
+	private AtomicReference<FailureDetector.Health> m_health = new AtomicReference<FailureDetector.Health>(FailureDetector.Health.ALIVE);
+	
+	// Reconnecting by itself once the camera is lost, retrying with capped exponential backoff
+	private volatile boolean m_autoReconnect = false;
+	private RetryPolicy m_reconnectPolicy = new RetryPolicy(Integer.MAX_VALUE, RECONNECT_BASE_DELAY, RECONNECT_MAX_DELAY);
+	private volatile Object m_reconnectChain; // Identifies the current run of attempts, null when not reconnecting
+	private volatile long m_lostAt;
+	
+	// The settings sent since connecting, in the order first sent, to be sent again after reconnecting
+	private LinkedHashMap<String, Integer> m_appliedSettings = new LinkedHashMap<String, Integer>();
+	
+	// What's known about the camera, replaced as a whole so it can be read without locking.
+	// Only ever changed with compareAndSet once connected, so a poll that finishes after a
+	// disconnect or reconnect can't bring back state from the old connection.
+	private AtomicReference<GoProCameraState> m_state = new AtomicReference<GoProCameraState>(GoProCameraState.DISCONNECTED);
+	
+	// How long the last connect took to fire onConnected and onReady, -1 until they have
+	private volatile long m_connectStart;
+	private volatile long m_timeToConnected = -1;
+	private volatile long m_timeToReady = -1;
+	
+	// Name, password and camera info saved from earlier connections, may be null
+	private volatile GoProSessionCache m_sessionCache;
+	
+	// Round trip times to this camera, used to size the request timeouts
+	private LatencyTracker m_latency = new LatencyTracker();
+	
+	// Getters are idempotent so can be retried, and optionally hedged
+	private RetryPolicy m_retryPolicy = new RetryPolicy();
+	private volatile boolean m_hedging = false;
+	private static double HEDGE_PERCENTILE = 0.95;
+	
+	// Ready to send requests for the setters, built in connect once the password is known
+	private volatile GoProCommandTable m_commandTable;
+	
+	// A command waiting to be sent, until then its param can be replaced by a newer value
+	private static class PendingCommand
+	{
+		public String command;
+		public int param;
+		public GoProFuture<Void> future; // Completed when the latest param has been sent
+	}
+	
+	// Settings not yet sent, in order. They are coalesced so the queue holds at most one of each.
+	private LinkedList<PendingCommand> m_commandQueue = new LinkedList<PendingCommand>();
+	private Map<String, PendingCommand> m_pendingCommands = new HashMap<String, PendingCommand>();
+	private Future<?> m_commandSender; // Sending the queue on the control lane, null when idle
+	
+	// The last status read from the camera, used by SetOptions to skip settings that
+	// wouldn't change anything. Forgotten as soon as a setting is queued, and a status
+	// fetch only replaces it if no setting was queued or being sent while it ran.
+	private volatile GoProCameraStatus m_lastStatus;
+	private int m_settingsVersion = 0; // Guarded by m_commandQueue
+	
+	// The camera state for GetStatus without a round trip. Updated whenever the status is
+	// read, by the bacpac poll once it's older than the TTL, and by our own setters.
+	private GoProShadowStatus m_shadowStatus = new GoProShadowStatus();
+	private volatile int m_statusTTL = DEFAULT_STATUS_TTL;
+	
+	// The last status read from the camera, to work out what changed in the next one
+	private GoProCameraStatus m_deliveredStatus;
+	private Object m_deliveryLock = new Object();
+	
+	// Reusable views for decoding status responses in place, only used on the dispatcher's status lane
+	private UnsignedByteView m_bacpacStatusView = new UnsignedByteView();
+	private UnsignedByteView[] m_statusViews = { new UnsignedByteView(), new UnsignedByteView(), new UnsignedByteView(), new UnsignedByteView() };
+	
+	// The raw status payloads last decoded and the status they decoded to, so identical
+	// payloads give back the same status without decoding. Only used on the status lane.
+	private byte[][] m_statusPayloads = new byte[4][];
+	private GoProCameraStatus m_decodedStatus;
+	
+	private static int HTTP_PORT = 80;
+	private static int DEFAULT_STATUS_TTL = 10000;
+	private static long RECONNECT_BASE_DELAY = 1000;
+	private static long RECONNECT_MAX_DELAY = 30000;
 		
 	public GoProCamera(GoProCameraListener listener)
+	{
+		this(listener, PriorityDispatcher.sharedPool(GoProScheduler.getInstance().getPool()));
+	}
+	
+	// The executor factory decides where the dispatcher's lanes get their threads from
+	public GoProCamera(GoProCameraListener listener, PriorityDispatcher.ExecutorFactory executorFactory)
 	{
 		m_listener = listener;
-		m_executor = Executors.newSingleThreadExecutor();
-		m_bacpacStatusTimer = new Timer();
+		m_dispatcher = new PriorityDispatcher(executorFactory);
+	}
+	
+	// Saving sessions lets a reconnect skip asking for the name, password and camera info
+	public void setSessionCache(GoProSessionCache sessionCache)
+	{
+		m_sessionCache = sessionCache;
 	}
 	
 	// Try to connect to a GoPro camera at the given ip address
 	//  1. Request the name from the camera, then if successful, 
     //  2. Request the password from the camera, then if successful,
     //  3. Request the bacpac status - start polling
+	// If there's a saved session for the camera, steps 1 and 2 are skipped and checked
+	// in the background once connected.
+	// No lock is held while talking to the camera or calling the listener, the state is
+	// published with m_state once each step is done.
 	public void connect(String ipAddress)
 	{
-		final GoProCamera localThis = this;
+		// A connect from the script replaces any reconnecting, and starts with the camera's own settings
+		m_reconnectChain = null;
+		synchronized(m_appliedSettings)
+		{
+			m_appliedSettings.clear();
+		}
+		
+		// Timings learned from another camera don't apply to this one
+		if(!ipAddress.equals(m_ipAddress))
+		{
+			m_latency.reset();
+		}
 		
 		m_ipAddress = ipAddress;
+		m_commandTable = null;
 		
-		m_executor.submit(new Runnable() {
+		m_dispatcher.submit(Priority.COMMAND, new Runnable() {
 			@Override
 			public void run() 
 			{
-				synchronized(localThis) // Synchronized with the GoProCamera instance
-				{		
-					// Cancel the bacpac status polling timer, in case Connect is called
-					// when the camera has already been connected.
-					m_bacpacStatusTimer.cancel(); // Timers need to be recreated after cancelling
-					m_bacpacStatusTimer = null;
-					
-					m_wifiName = getWifiNameImmediate();
-					
-					if(m_wifiName != null)
-					{
-						m_wifiPassword = getWifiPasswordImmediate();
-						
-						if(m_wifiPassword != null)
-						{
-							// Get the initial bacpac status before firing the onConnected callback, 
-							// this ensures that isPoweredOn, and isReady can be called from the
-							// onConnected handler.
-							m_bacpacStatus = getBacpacStatusImmediate();
-							
-							// Fire the OnConnected event
-							Log.d(TAG, "Connected to GoPro " + m_wifiName + " at " + m_ipAddress);
-							m_listener.onConnected();
-							
-							if(m_bacpacStatus.isReady())
-							{
-								// Get the camera info, name, model, firmware
-								m_cameraInfo = getCameraInfoImmediate();
-								
-								m_listener.onReady();
-							}
-							
-							// Now start polling the bacpac status at regular intervals
-							startPollingBacpacStatus();
-						}
-					}
-					
-					if(m_wifiName == null || m_wifiPassword == null)
-					{
-						Log.d(TAG, "Failed to connect to GoPro at " + m_ipAddress);
-						m_listener.onError(GoProCameraErrors.NOT_FOUND);
-					}	
-				}
+				connectImmediate(false);
 			}			
 		});
 	}
 	
-	public void disconnect()
+	// Blocking call
+	// The handshake for connect, returns true if connected. When reconnecting, the listener
+	// isn't told about connecting, becoming ready or failing to, the supervisor reports the
+	// outcome. Runs on the control lane.
+	private boolean connectImmediate(boolean reconnecting)
 	{
-		if(m_bacpacStatusTimer != null)
+		// Stop polling the bacpac status, in case Connect is called
+		// when the camera has already been connected.
+		stopPollingBacpacStatus();
+		m_state.set(GoProCameraState.DISCONNECTED);
+		
+		long start = System.currentTimeMillis();
+		m_connectStart = start;
+		m_timeToConnected = -1;
+		m_timeToReady = -1;
+		
+		GoProSessionCache sessionCache = m_sessionCache;
+		GoProSessionCache.Session session = (sessionCache != null) ? sessionCache.load(m_ipAddress) : null;
+		
+		if(session != null && connectFromSession(session, start, reconnecting))
+		{
+			startPollingBacpacStatus();
+			return true;
+		}
+		
+		// Neither the name nor the password need the password, ask for both at once
+		HttpFuture[] handshake = HttpAsyncClient.getInstance().pipeline(new String[] { getUrl(Commands.NAME), getUrl(Commands.PASSWORD) },
+																		m_latency.getBudget(RequestClass.INFO), null);
+		
+		String wifiName = getWifiNameImmediate(handshake[0]);
+		String wifiPassword = (wifiName != null) ? getWifiPasswordImmediate(handshake[1]) : null;
+		
+		if(wifiPassword == null)
+		{
+			if(wifiName == null)
+			{
+				// The password was never taken
+				HttpUtils.cancelOrRelease(handshake[1]);
+			}
+			
+			Log.d(TAG, "Failed to connect to GoPro at " + m_ipAddress);
+			if(!reconnecting)
+			{
+				m_listener.onError(GoProCameraErrors.NOT_FOUND);
+			}
+			return false;
+		}
+		
+		m_wifiPassword = wifiPassword;
+		
+		// Ask for the bacpac status and, in case the camera turns out to be ready,
+		// the camera info straight away. Build the command table while they're on their way.
+		HttpFuture[] speculative = HttpAsyncClient.getInstance().pipeline(new String[] { getUrlWithPassword(Commands.BACPAC_STATUS), getUrlWithPassword(Commands.CAMERA_INFO) },
+																		  m_latency.getBudget(RequestClass.INFO), null);
+		
+		try
+		{
+			m_commandTable = makeCommandTable();
+		}
+		catch(IOException e)
+		{
+			Log.e(TAG, "makeCommandTable", e);
+		}
+		
+		// Get the initial bacpac status before firing the onConnected callback, 
+		// this ensures that isPoweredOn, and isReady can be called from the
+		// onConnected handler.
+		GoProCameraState state = new GoProCameraState(wifiName, getBacpacStatusImmediate(new UnsignedByteView(), speculative[0]), null);
+		m_state.set(state);
+		m_timeToConnected = System.currentTimeMillis() - start;
+		
+		// Fire the OnConnected event
+		Log.d(TAG, "Connected to GoPro " + wifiName + " at " + m_ipAddress + " in " + m_timeToConnected + "ms");
+		if(!reconnecting)
+		{
+			m_listener.onConnected();
+		}
+		
+		if(state.isReady())
 		{
-			m_bacpacStatusTimer.cancel(); // Timers need to be recreated after cancelling
-			m_bacpacStatusTimer = null;
+			// Get the camera info, name, model, firmware
+			m_state.compareAndSet(state, state.withCameraInfo(getCameraInfoImmediate(speculative[1])));
+			m_timeToReady = System.currentTimeMillis() - start;
+			
+			Log.d(TAG, "GoPro ready in " + m_timeToReady + "ms");
+			if(!reconnecting)
+			{
+				m_listener.onReady();
+			}
+		}
+		else
+		{
+			// Only read once the camera is ready
+			HttpUtils.cancelOrRelease(speculative[1]);
 		}
 		
-		m_bacpacStatus = null;
-		m_cameraInfo = null;
+		saveSession();
+		
+		// Now start polling the bacpac status at regular intervals
+		startPollingBacpacStatus();
+		
+		return true;
 	}
 	
-	private void startPollingBacpacStatus()
+	// Blocking call
+	// Connect with the saved name and password, so the first request is already authenticated.
+	// Returns false if the camera rejects the password or can't be read, for the full handshake
+	// to be tried instead. Runs on the control lane.
+	private boolean connectFromSession(GoProSessionCache.Session session, long start, boolean reconnecting)
 	{
-		m_bacpacStatusTimer = new Timer();
+		m_wifiPassword = session.password;
 		
-		final GoProCamera localThis = this;
+		try
+		{
+			m_commandTable = makeCommandTable();
+		}
+		catch(IOException e)
+		{
+			Log.e(TAG, "makeCommandTable", e);
+		}
 		
-		m_bacpacStatusTimer.scheduleAtFixedRate(new TimerTask() {
-			@Override
-			public void run() 
+		GoProBacpacStatus bacpacStatus;
+		try
+		{
+			bacpacStatus = readBacpacStatus(new UnsignedByteView(), null);
+		}
+		catch(IOException e)
+		{
+			Log.e(TAG, "connectFromSession", e);
+			
+			if(isAuthFailure(e))
 			{
-				m_executor.submit(new Runnable() {
-					@Override
-					public void run() 
-					{
-						GoProBacpacStatus status = getBacpacStatusImmediate();
-						
-						synchronized(localThis) // Synchronized with GoProCamera instance
-						{
-							if(status == null)
-							{
-								// Cancel polling timer
-								m_bacpacStatusTimer.cancel();
-								
-								// Camera disconnected
-								m_listener.onError(GoProCameraErrors.DISCONNECTED);
-							}
-							else
-							{
-								// Fire the onReady callback if the camera ready state has changed from false to true
-								boolean hasBecomeReady = false;
-								
-								if(m_bacpacStatus != null)
-								{
-									hasBecomeReady = (!m_bacpacStatus.isReady() && status.isReady());
-								}
-								else
-								{
-									hasBecomeReady = status.isReady();
-								}
-								
-								if(hasBecomeReady)
-								{	
-									// Get the camera info, name, model, firmware
-									m_cameraInfo = getCameraInfoImmediate();
-									
-									m_listener.onReady();
-								}
-							}
-							
-							m_bacpacStatus = status;
-						}
-					}
-				});
-			}								
-		}, BACPAC_STATUS_POLL_INTERVAL, BACPAC_STATUS_POLL_INTERVAL);
+				m_sessionCache.invalidate(m_ipAddress);
+			}
+			
+			m_commandTable = null;
+			return false;
+		}
+		
+		GoProCameraState state = new GoProCameraState(session.wifiName, bacpacStatus, null);
+		m_state.set(state);
+		m_timeToConnected = System.currentTimeMillis() - start;
+		
+		Log.d(TAG, "Connected to GoPro " + session.wifiName + " at " + m_ipAddress + " from the saved session in " + m_timeToConnected + "ms");
+		if(!reconnecting)
+		{
+			m_listener.onConnected();
+		}
+		
+		if(state.isReady())
+		{
+			GoProCameraInfo cameraInfo = (session.cameraInfo != null) ? session.cameraInfo : getCameraInfoImmediate(null);
+			m_state.compareAndSet(state, state.withCameraInfo(cameraInfo));
+			m_timeToReady = System.currentTimeMillis() - start;
+			
+			Log.d(TAG, "GoPro ready in " + m_timeToReady + "ms");
+			if(!reconnecting)
+			{
+				m_listener.onReady();
+			}
+		}
+		
+		// Check the saved session still matches the camera once there's nothing more urgent to do
+		submitSessionRefresh();
+		
+		return true;
 	}
 	
-	public boolean isReady()
+	private void submitSessionRefresh()
+	{
+		try
+		{
+			m_dispatcher.submit(Priority.BACKGROUND, new Runnable() {
+				@Override
+				public void run() 
+				{
+					refreshSession();
+				}
+			});
+		}
+		catch(RejectedExecutionException e)
+		{
+			Log.e(TAG, "submitSessionRefresh", e);
+		}
+	}
+	
+	// Blocking call
+	// Read the name, password and camera info from the camera again, take up a changed
+	// password and save the session. Runs on the status lane.
+	private void refreshSession()
 	{
-		synchronized(this)
+		GoProCameraState state = m_state.get();
+		
+		if(!state.isConnected())
+		{
+			return;
+		}
+		
+		HttpFuture[] handshake = HttpAsyncClient.getInstance().pipeline(new String[] { getUrl(Commands.NAME), getUrl(Commands.PASSWORD) },
+																		m_latency.getBudget(RequestClass.INFO), null);
+		
+		String wifiName = getWifiNameImmediate(handshake[0]);
+		String wifiPassword = getWifiPasswordImmediate(handshake[1]);
+		
+		if(wifiName == null || wifiPassword == null)
+		{
+			return; // Try again on the next connect
+		}
+		
+		if(!wifiPassword.equals(m_wifiPassword))
 		{
-			if(m_bacpacStatus != null)
+			Log.d(TAG, "GoPro password has changed");
+			
+			m_wifiPassword = wifiPassword;
+			
+			try
+			{
+				m_commandTable = makeCommandTable();
+			}
+			catch(IOException e)
 			{
-				return m_bacpacStatus.isReady();
+				Log.e(TAG, "makeCommandTable", e);
+				m_commandTable = null;
 			}
 		}
 		
+		GoProCameraState refreshed = new GoProCameraState(wifiName, state.getBacpacStatus(), state.isReady() ? getCameraInfoImmediate(null) : state.getCameraInfo());
+		
+		if(m_state.compareAndSet(state, refreshed))
+		{
+			saveSession();
+		}
+	}
+	
+	// Save the name, password and camera info for the next connect
+	private void saveSession()
+	{
+		GoProSessionCache sessionCache = m_sessionCache;
+		GoProCameraState state = m_state.get();
+		
+		if(sessionCache == null || !state.isConnected() || m_wifiPassword == null)
+		{
+			return;
+		}
+		
+		GoProSessionCache.Session session = new GoProSessionCache.Session();
+		session.wifiName = state.getWifiName();
+		session.password = m_wifiPassword;
+		session.cameraInfo = state.getCameraInfo();
+		
+		sessionCache.save(m_ipAddress, session);
+	}
+	
+	// The camera didn't accept the password
+	private static boolean isAuthFailure(IOException e)
+	{
+		if(e instanceof HttpStatusException)
+		{
+			int statusCode = ((HttpStatusException)e).getStatusCode();
+			
+			return statusCode == HttpURLConnection.HTTP_UNAUTHORIZED || statusCode == HttpURLConnection.HTTP_FORBIDDEN;
+		}
+		
 		return false;
 	}
 	
-	public boolean isPowerOn()
+	public void disconnect()
 	{
-		synchronized(this)
+		stopPollingBacpacStatus();
+		m_reconnectChain = null;
+		
+		synchronized(m_appliedSettings)
+		{
+			m_appliedSettings.clear();
+		}
+		
+		m_state.set(GoProCameraState.DISCONNECTED);
+		m_commandTable = null;
+		m_lastStatus = null;
+		m_shadowStatus.clear();
+		
+		synchronized(m_deliveryLock)
+		{
+			m_deliveredStatus = null;
+		}
+		
+		// Drop commands that haven't been sent yet
+		synchronized(m_commandQueue)
 		{
-			if(m_bacpacStatus != null)
+			for(PendingCommand pending : m_commandQueue)
 			{
-				return m_bacpacStatus.isPowerOn();
+				pending.future.complete(GoProResult.<Void>failure(new IOException(GoProCameraErrors.DISCONNECTED), GoProResult.NO_STATUS_CODE, 0));
 			}
+			
+			m_commandQueue.clear();
+			m_pendingCommands.clear();
 		}
 		
-		return false;
+		// Don't hold sockets open to a camera we're no longer talking to
+		if(m_ipAddress != null)
+		{
+			HttpUtils.getConnectionPool().closeIdle(m_ipAddress, HTTP_PORT);
+		}
 	}
 	
-	public String getModelName()
+	// Disconnect and let go of everything the camera holds: its polls on the shared
+	// scheduler and its dispatcher lanes. The camera can't be connected again afterwards.
+	public void close()
+	{
+		disconnect();
+		
+		m_scheduler.close();
+		m_dispatcher.shutdown();
+	}
+	
+	private void startPollingBacpacStatus()
+	{
+		Object chain = new Object();
+		m_pollChain = chain;
+		
+		m_pollSchedule.reset();
+		m_failureDetector.reset();
+		reportHealth(FailureDetector.Health.ALIVE);
+		schedulePoll(chain, m_pollSchedule.getInterval());
+	}
+	
+	// Poll once after the delay, moved to this camera's phase so cameras don't poll in
+	// lockstep. Each poll schedules the next when it finishes, so polls never overlap or
+	// bunch up after a stall.
+	private void schedulePoll(final Object chain, long delay)
+	{
+		m_scheduler.schedule(new Runnable() {
+			@Override
+			public void run() 
+			{
+				if(chain != m_pollChain)
+				{
+					return; // Polling was stopped or restarted
+				}
+				
+				if(m_pollSchedule.isSuspended())
+				{
+					// Commands are getting answers, no need to ask if the camera is there
+					schedulePoll(chain, m_pollSchedule.getInterval());
+					return;
+				}
+				
+				try
+				{
+					m_dispatcher.submit(Priority.BACKGROUND, new Runnable() {
+						@Override
+						public void run() 
+						{
+							pollBacpacStatus(chain);
+						}
+					});
+				}
+				catch(RejectedExecutionException e)
+				{
+					// The status lane is backed up or the camera has been closed, skip this poll
+					Log.d(TAG, "Skipping bacpac status poll: " + e.getMessage());
+					schedulePoll(chain, m_pollSchedule.getInterval());
+				}
+			}
+		}, m_scheduler.getPhasedDelay(delay));
+	}
+	
+	private void stopPollingBacpacStatus()
 	{
-		if(m_cameraInfo != null)
+		m_pollChain = null;
+	}
+	
+	// Blocking call
+	// Read the bacpac status and publish it, firing onReady if the camera has just become
+	// ready, or onError once the failure detector decides it has gone, then schedule the
+	// next poll. Runs on the status lane.
+	private void pollBacpacStatus(Object chain)
+	{
+		GoProCameraState state = m_state.get();
+		
+		if(!state.isConnected() || chain != m_pollChain)
 		{
-			return m_cameraInfo.modelName;
+			return; // A poll queued before disconnecting
 		}
 		
-		return "Unknown";
+		long start = System.currentTimeMillis();
+		GoProBacpacStatus status = getBacpacStatusImmediate(m_bacpacStatusView, null);
+		
+		if(status == null)
+		{
+			FailureDetector.Health health = m_failureDetector.onMiss();
+			reportHealth(health);
+			
+			if(health != FailureDetector.Health.LOST)
+			{
+				// Probably a dropped request, check again soon rather than reconnecting
+				Log.d(TAG, "Missed a bacpac status poll, camera is " + health.getLabel());
+				schedulePoll(chain, m_pollSchedule.onPolled(true));
+				return;
+			}
+			
+			// Stop polling
+			if(chain == m_pollChain)
+			{
+				m_pollChain = null;
+			}
+			
+			if(m_state.compareAndSet(state, state.withBacpacStatus(null)))
+			{
+				// Camera disconnected
+				m_listener.onError(GoProCameraErrors.DISCONNECTED);
+				
+				if(m_autoReconnect)
+				{
+					startReconnecting();
+				}
+			}
+			return;
+		}
+		
+		reportHealth(m_failureDetector.onHeartbeat(System.currentTimeMillis() - start));
+		
+		// Fire the onReady callback if the camera ready state has changed from false to true
+		boolean hasBecomeReady = !state.isReady() && status.isReady();
+		GoProCameraState polled = state.withBacpacStatus(status);
+		
+		if(hasBecomeReady)
+		{	
+			// Get the camera info, name, model, firmware
+			polled = polled.withCameraInfo(getCameraInfoImmediate(null));
+		}
+		
+		if(!m_state.compareAndSet(state, polled))
+		{
+			return; // Disconnected or reconnected while polling
+		}
+		
+		if(hasBecomeReady)
+		{
+			saveSession();
+			
+			if(m_timeToReady < 0)
+			{
+				m_timeToReady = System.currentTimeMillis() - m_connectStart;
+				Log.d(TAG, "GoPro ready in " + m_timeToReady + "ms");
+			}
+			
+			m_listener.onReady();
+		}
+		
+		// Keep the shadow status from going stale
+		if(status.isReady() && m_shadowStatus.getAge() > m_statusTTL)
+		{
+			getCameraStatusImmediate();
+		}
+		
+		// Poll fast while the camera is booting or changing, and back off while it's idle
+		GoProBacpacStatus last = state.getBacpacStatus();
+		boolean changed = last == null || last.isReady() != status.isReady() || last.isPowerOn() != status.isPowerOn();
+		boolean booting = status.isPowerOn() && !status.isReady();
+		
+		schedulePoll(chain, m_pollSchedule.onPolled(changed || booting));
 	}
 	
-	public String getFirmware()
-	{	
-		if(m_cameraInfo != null)
+	// Reconnect by itself when the camera is lost, instead of leaving it to the listener
+	public void setAutoReconnect(boolean enable)
+	{
+		m_autoReconnect = enable;
+		
+		if(!enable)
 		{
-			return m_cameraInfo.firmware;
+			m_reconnectChain = null;
+		}
+	}
+	
+	public boolean isReconnecting()
+	{
+		return m_reconnectChain != null;
+	}
+	
+	private void startReconnecting()
+	{
+		Object chain = new Object();
+		m_reconnectChain = chain;
+		m_lostAt = System.currentTimeMillis();
+		
+		Log.d(TAG, "Lost GoPro at " + m_ipAddress + ", reconnecting");
+		scheduleReconnect(chain, 1);
+	}
+	
+	// Try reconnecting after the backoff for the attempt
+	private void scheduleReconnect(final Object chain, final int attempt)
+	{
+		long delay = Math.max(RECONNECT_BASE_DELAY, m_reconnectPolicy.getDelay(attempt));
+		
+		m_scheduler.schedule(new Runnable() {
+			@Override
+			public void run() 
+			{
+				if(chain != m_reconnectChain)
+				{
+					return; // Connected or disconnected by the script
+				}
+				
+				try
+				{
+					m_dispatcher.submit(Priority.COMMAND, new Runnable() {
+						@Override
+						public void run() 
+						{
+							reconnect(chain, attempt);
+						}
+					});
+				}
+				catch(RejectedExecutionException e)
+				{
+					Log.d(TAG, "Skipping reconnect attempt: " + e.getMessage());
+					scheduleReconnect(chain, attempt + 1);
+				}
+			}
+		}, delay);
+	}
+	
+	// Blocking call
+	// One reconnect attempt. Once connected, the settings sent before the camera was lost
+	// are sent again and the listener told how long the camera was gone. Runs on the
+	// control lane.
+	private void reconnect(Object chain, int attempt)
+	{
+		if(chain != m_reconnectChain)
+		{
+			return;
+		}
+		
+		Log.d(TAG, "Reconnect attempt " + attempt + " to GoPro at " + m_ipAddress);
+		
+		if(!connectImmediate(true))
+		{
+			scheduleReconnect(chain, attempt + 1);
+			return;
+		}
+		
+		if(chain != m_reconnectChain)
+		{
+			// Disconnected while the attempt was running
+			stopPollingBacpacStatus();
+			m_state.set(GoProCameraState.DISCONNECTED);
+			return;
+		}
+		
+		m_reconnectChain = null;
+		restoreSettings();
+		
+		long downtime = System.currentTimeMillis() - m_lostAt;
+		Log.d(TAG, "Reconnected to GoPro after " + downtime + "ms");
+		m_listener.onReconnected(downtime);
+	}
+	
+	// Queue the settings sent before the camera was lost again
+	private void restoreSettings()
+	{
+		Map<String, Integer> settings;
+		
+		synchronized(m_appliedSettings)
+		{
+			settings = new LinkedHashMap<String, Integer>(m_appliedSettings);
+		}
+		
+		for(Map.Entry<String, Integer> setting : settings.entrySet())
+		{
+			execute(setting.getKey(), setting.getValue());
+		}
+	}
+	
+	// Tell the listener if the camera's health has changed
+	private void reportHealth(FailureDetector.Health health)
+	{
+		if(m_health.getAndSet(health) != health)
+		{
+			m_listener.onHealthChanged(health);
+		}
+	}
+	
+	// Whether the camera is answering, according to the failure detector
+	public FailureDetector.Health getHealth()
+	{
+		return m_health.get();
+	}
+	
+	// Milliseconds between bacpac status polls while the camera is booting or changing,
+	// normally, and at most while it's idle
+	public void setPollIntervals(long fastInterval, long interval, long idleInterval)
+	{
+		m_pollSchedule.setIntervals(fastInterval, interval, idleInterval);
+	}
+	
+	// The current delay in milliseconds between bacpac status polls
+	public long getPollInterval()
+	{
+		return m_pollSchedule.getInterval();
+	}
+	
+	// What's known about the camera, without waiting on anything
+	public GoProCameraState getState()
+	{
+		return m_state.get();
+	}
+	
+	public boolean isReady()
+	{
+		return m_state.get().isReady();
+	}
+	
+	// Milliseconds from the last connect starting to onConnected firing, -1 if it hasn't
+	public long getTimeToConnected()
+	{
+		return m_timeToConnected;
+	}
+	
+	// Milliseconds from the last connect starting to onReady firing, -1 if it hasn't
+	public long getTimeToReady()
+	{
+		return m_timeToReady;
+	}
+	
+	public boolean isPowerOn()
+	{
+		return m_state.get().isPowerOn();
+	}
+	
+	public String getModelName()
+	{
+		GoProCameraInfo cameraInfo = m_state.get().getCameraInfo();
+		
+		if(cameraInfo != null)
+		{
+			return cameraInfo.modelName;
+		}
+		
+		return "Unknown";
+	}
+	
+	public String getFirmware()
+	{	
+		GoProCameraInfo cameraInfo = m_state.get().getCameraInfo();
+		
+		if(cameraInfo != null)
+		{
+			return cameraInfo.firmware;
+		}
+		
+		return "Unknown";
+	}
+	
+	public String getPreviewUrl()
+	{
+	    return "http://" + m_ipAddress + ":8080/live/amba.m3u8";
+	}
+	
+	// Send a duplicate of a slow status or info request rather than wait out a lost packet.
+	// Costs an extra request now and then, commands are never hedged.
+	public void setHedgingEnabled(boolean enabled)
+	{
+		m_hedging = enabled;
+	}
+	
+	// How busy each of the dispatcher's lanes has been, for sizing them
+	public PriorityDispatcher.LaneStats getLaneStats(PriorityDispatcher.Lane lane)
+	{
+		return m_dispatcher.getStats(lane);
+	}
+	
+	// How old the shadow status can get, in milliseconds, before polling reads it again
+	public void setStatusTTL(int ttl)
+	{
+		m_statusTTL = ttl;
+	}
+	
+	public int getStatusTTL()
+	{
+		return m_statusTTL;
+	}
+	
+	// Non-Blocking call
+	// Send the command with the parameter value (-1 for none).
+	// Shutter and power are sent straight away on the dispatcher's reserved lane, ahead of
+	// anything else queued. Settings are queued in order, and if the same setting is already
+	// queued and hasn't been sent yet its value is replaced instead, so a script changing a
+	// setting faster than the camera can apply it only sends the latest value.
+	// The returned future completes once the command (or a newer value for it) has been sent.
+	public GoProFuture<Void> execute(final String command, final int param)
+	{
+		if(command.equals(Commands.SHUTTER) || command.equals(Commands.POWER))
+		{
+			final GoProFuture<Void> future = new GoProFuture<Void>();
+			
+			try
+			{
+				m_dispatcher.submit(Priority.URGENT, new Runnable() {
+					@Override
+					public void run() 
+					{
+						future.complete(sendCommand(command, param));
+					}
+				});
+			}
+			catch(RejectedExecutionException e)
+			{
+				future.complete(GoProResult.<Void>failure(e, GoProResult.NO_STATUS_CODE, 0));
+			}
+			
+			return future;
+		}
+		
+		PendingCommand pending;
+		List<PendingCommand> rejected;
+		RejectedExecutionException rejection = null;
+		
+		synchronized(m_commandQueue)
+		{
+			m_lastStatus = null;
+			m_settingsVersion++;
+			
+			pending = m_pendingCommands.get(command);
+			
+			if(pending != null)
+			{
+				pending.param = param;
+			}
+			else
+			{
+				pending = new PendingCommand();
+				pending.command = command;
+				pending.param = param;
+				pending.future = new GoProFuture<Void>();
+				
+				m_commandQueue.addLast(pending);
+				m_pendingCommands.put(command, pending);
+			}
+			
+			if(m_commandSender == null)
+			{
+				try
+				{
+					m_commandSender = m_dispatcher.submit(Priority.COMMAND, new Runnable() {
+						@Override
+						public void run() 
+						{
+							sendQueuedCommands();
+						}
+					});
+				}
+				catch(RejectedExecutionException e)
+				{
+					// The camera has been closed, nothing will send the queue
+					Log.e(TAG, "execute", e);
+					rejection = e;
+				}
+			}
+			
+			if(m_commandSender != null)
+			{
+				return pending.future;
+			}
+			
+			rejected = new LinkedList<PendingCommand>(m_commandQueue);
+			m_commandQueue.clear();
+			m_pendingCommands.clear();
+		}
+		
+		// Completed outside the lock, listeners may queue more settings
+		for(PendingCommand failed : rejected)
+		{
+			failed.future.complete(GoProResult.<Void>failure(rejection, GoProResult.NO_STATUS_CODE, 0));
+		}
+		
+		return pending.future;
+	}
+	
+	// Non-Blocking call
+	// Send a setting and apply the change to the shadow status. If the camera doesn't take
+	// the setting the shadow status is dropped, so the next GetStatus reads the camera.
+	private GoProFuture<Void> execute(String command, int param, GoProShadowStatus.Change change)
+	{
+		GoProFuture<Void> future = execute(command, param);
+		m_shadowStatus.apply(change);
+		
+		future.addListener(new GoProFuture.Listener<Void>() {
+			@Override
+			public void onComplete(GoProResult<Void> result)
+			{
+				if(!result.isSuccess())
+				{
+					m_shadowStatus.clear();
+				}
+			}
+		});
+		
+		return future;
+	}
+	
+	// A setter was given a value the camera doesn't support
+	private static GoProFuture<Void> unsupported(String setting, Object value)
+	{
+		return GoProFuture.failed(new IllegalArgumentException("Unsupported " + setting + ": " + value));
+	}
+	
+	// The last status read from the camera, or null if settings have been changed since
+	public GoProCameraStatus getLastStatus()
+	{
+		return m_lastStatus;
+	}
+	
+	// Identifies the camera's settings for a status fetch about to start, -1 if
+	// settings are still being sent so the status couldn't be trusted anyway
+	private int getSettledVersion()
+	{
+		synchronized(m_commandQueue)
+		{
+			return (m_commandSender == null) ? m_settingsVersion : -1;
+		}
+	}
+	
+	// Keep a status fetched since getSettledVersion returned settledVersion, unless
+	// settings have been queued since then
+	private void rememberStatus(GoProCameraStatus status, int settledVersion)
+	{
+		deliverChanges(status);
+		
+		synchronized(m_commandQueue)
+		{
+			if(status != null && settledVersion >= 0 && settledVersion == m_settingsVersion && m_commandSender == null)
+			{
+				m_lastStatus = status;
+				m_shadowStatus.update(status);
+			}
+		}
+	}
+	
+	// Tell the listener which properties differ from the last status read from the camera.
+	// Unlike the shadow status, this isn't touched by our own setters, so a setting shows up
+	// here once the camera reports it.
+	private void deliverChanges(GoProCameraStatus status)
+	{
+		if(status == null)
+		{
+			return;
+		}
+		
+		List<GoProCameraStatus.Change> changes;
+		
+		synchronized(m_deliveryLock)
+		{
+			if(status == m_deliveredStatus)
+			{
+				return; // Decoded from the same bytes, nothing can have changed
+			}
+			
+			changes = status.getChanges(m_deliveredStatus);
+			m_deliveredStatus = status;
+		}
+		
+		if(!changes.isEmpty())
+		{
+			m_listener.onCameraStatusChanged(changes);
+		}
+	}
+	
+	// Blocking call
+	// Send queued commands one at a time until the queue is empty
+	private void sendQueuedCommands()
+	{
+		while(true)
+		{
+			PendingCommand pending;
+			
+			synchronized(m_commandQueue)
+			{
+				pending = m_commandQueue.poll();
+				
+				if(pending == null)
+				{
+					m_commandSender = null;
+					return;
+				}
+				
+				// Once it's on its way a newer value has to be sent separately
+				m_pendingCommands.remove(pending.command);
+			}
+			
+			GoProResult<Void> result = sendCommand(pending.command, pending.param);
+			
+			// Remember it for after a reconnect, locating is left off
+			if(result.isSuccess() && !pending.command.equals(Commands.LOCATE))
+			{
+				synchronized(m_appliedSettings)
+				{
+					m_appliedSettings.put(pending.command, pending.param);
+				}
+			}
+			
+			pending.future.complete(result);
+		}
+	}
+	
+	// Blocking call
+	// Send the command, returning whether the camera accepted it and how long it took
+	private GoProResult<Void> sendCommand(String command, int param)
+	{
+		long start = System.currentTimeMillis();
+		
+		try
+		{
+			HttpResponse response = request(command, param);
+			int statusCode = response.getStatusCode();
+			response.release();
+			
+			return GoProResult.success(null, statusCode, System.currentTimeMillis() - start);
+		}
+		catch(HttpStatusException e)
+		{
+			Log.e(TAG, "execute", e);
+			
+			// A saved password that's no longer right, forget it and ask the camera for it again
+			GoProSessionCache sessionCache = m_sessionCache;
+			if(sessionCache != null && isAuthFailure(e))
+			{
+				sessionCache.invalidate(m_ipAddress);
+				submitSessionRefresh();
+			}
+			
+			return GoProResult.failure(e, e.getStatusCode(), System.currentTimeMillis() - start);
+		}
+		catch(SocketTimeoutException e)
+		{
+			Log.e(TAG, "execute", e);
+			m_listener.onError(GoProCameraErrors.TIMEOUT);
+			return GoProResult.failure(e, GoProResult.NO_STATUS_CODE, System.currentTimeMillis() - start);
+		}
+		catch(Exception e)
+		{
+			Log.e(TAG, "execute", e);
+			return GoProResult.failure(e, GoProResult.NO_STATUS_CODE, System.currentTimeMillis() - start);
+		}
+	}
+	
+	// Blocking call
+	// Send a command within the timeout learned for commands, and feed the round trip
+	// time back into the tracker. Throws a SocketTimeoutException if the camera doesn't
+	// respond in time. Call release() on the response once finished with it.
+	private HttpResponse request(String command, int param) throws IOException
+	{
+		byte[] request = makeRequest(command, param);
+		long start = System.currentTimeMillis();
+		
+		try
+		{
+			HttpResponse response = HttpUtils.send(m_ipAddress, HTTP_PORT, request, m_latency.getBudget(RequestClass.COMMAND));
+			onCommandAnswered(System.currentTimeMillis() - start);
+			
+			return HttpUtils.checkSuccessful(response, command);
+		}
+		catch(SocketTimeoutException e)
+		{
+			m_latency.recordTimeout(RequestClass.COMMAND);
+			throw e;
+		}
+	}
+	
+	// The raw request for a command, from the command table if it's been built
+	private byte[] makeRequest(String command, int param) throws IOException
+	{
+		GoProCommandTable commandTable = m_commandTable;
+		byte[] request = (commandTable != null) ? commandTable.get(command, param) : null;
+		
+		if(request == null)
+		{
+			// Not connected yet, build it the slow way
+			request = GoProCommandTable.makeRequest(m_ipAddress, command, m_wifiPassword, param);
+		}
+		
+		return request;
+	}
+	
+	// The camera answered a command, with any status
+	private void onCommandAnswered(long roundTrip)
+	{
+		m_latency.recordRoundTrip(RequestClass.COMMAND, roundTrip);
+		m_pollSchedule.onActivity(); // Even an error status shows the camera is there
+		
+		if(m_state.get().isConnected())
+		{
+			reportHealth(m_failureDetector.onAnswered());
+		}
+	}
+	
+	// Blocking call
+	// Arm a command for a synchronized trigger: build the request and take a warm connection,
+	// arrive at the barrier, and once it releases send the request with nothing but the
+	// socket write in between. Runs on the urgent lane.
+	private GoProResult<GoProSyncShutter.Ack> sendSynchronized(String command, int param, GoProSyncShutter barrier)
+	{
+		HttpConnectionPool pool = HttpUtils.getConnectionPool();
+		int budget = m_latency.getBudget(RequestClass.COMMAND);
+		HttpConnection connection = null;
+		byte[] request = null;
+		IOException armError = null;
+		
+		try
+		{
+			request = makeRequest(command, param);
+			connection = pool.acquire(m_ipAddress, HTTP_PORT, budget);
+		}
+		catch(IOException e)
+		{
+			armError = e;
+		}
+		finally
+		{
+			barrier.arrive();
+		}
+		
+		try
+		{
+			barrier.await();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			armError = new IOException("Interrupted waiting to send " + command);
+		}
+		
+		if(armError != null)
+		{
+			Log.e(TAG, "sendSynchronized", armError);
+			
+			if(connection != null)
+			{
+				pool.release(connection, true);
+			}
+			return GoProResult.failure(armError, GoProResult.NO_STATUS_CODE, 0);
+		}
+		
+		long released = barrier.getReleaseTime();
+		GoProSyncShutter.Ack ack = new GoProSyncShutter.Ack();
+		HttpResponse response = null;
+		boolean reusable = false;
+		
+		try
+		{
+			ack.sent = System.currentTimeMillis() - released;
+			
+			try
+			{
+				connection.writeRequest(request);
+				response = connection.readResponse(System.currentTimeMillis() + budget);
+				reusable = response.isKeepAlive();
+			}
+			catch(IOException e)
+			{
+				if(!connection.isReused() || e instanceof SocketTimeoutException)
+				{
+					throw e;
+				}
+				
+				// The warm connection had gone stale, it can only be sent again on a new one
+				Log.d(TAG, "Stale pooled connection to " + m_ipAddress + ", resending " + command);
+				response = HttpUtils.send(m_ipAddress, HTTP_PORT, request, budget);
+			}
+			
+			ack.acknowledged = System.currentTimeMillis() - released;
+			onCommandAnswered(ack.acknowledged - ack.sent);
+			
+			int statusCode = response.getStatusCode();
+			HttpUtils.checkSuccessful(response, command).release();
+			
+			return GoProResult.success(ack, statusCode, ack.acknowledged - ack.sent);
+		}
+		catch(HttpStatusException e)
+		{
+			Log.e(TAG, "sendSynchronized", e);
+			return GoProResult.failure(e, e.getStatusCode(), System.currentTimeMillis() - released - ack.sent);
+		}
+		catch(IOException e)
+		{
+			Log.e(TAG, "sendSynchronized", e);
+			
+			if(e instanceof SocketTimeoutException)
+			{
+				m_latency.recordTimeout(RequestClass.COMMAND);
+				m_listener.onError(GoProCameraErrors.TIMEOUT);
+			}
+			return GoProResult.failure(e, GoProResult.NO_STATUS_CODE, System.currentTimeMillis() - released - ack.sent);
+		}
+		finally
+		{
+			pool.release(connection, reusable);
+		}
+	}
+	
+	// Precompile every command request the setters can send. Called once the password is known.
+	private GoProCommandTable makeCommandTable() throws IOException
+	{
+		GoProCommandTable table = new GoProCommandTable(m_ipAddress, m_wifiPassword);
+		
+		table.add(Commands.PREVIEW, 0x00, 0x02);
+		table.add(Commands.SHUTTER, 0x00, 0x01);
+		table.add(Commands.POWER, 0x00, 0x01);
+		table.add(Commands.LOCATE, 0x00, 0x01);
+		table.add(Commands.CAMERA_MODE, 0x00, 0x01, 0x02, 0x03, 0x05, 0x07);
+		table.add(Commands.DEFAULT_CAMERA_MODE, 0x00, 0x01, 0x02, 0x03);
+		table.add(Commands.ORIENTATION, 0x00, 0x01);
+		table.add(Commands.PROTUNE, 0x00, 0x01);
+		table.add(Commands.ONE_BUTTON, 0x00, 0x01);
+		table.add(Commands.OSD, 0x00, 0x01);
+		table.add(Commands.VIDEO_STANDARD, 0x00, 0x01);
+		table.add(Commands.VIDEO_MODE, 0x00, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x0a);
+		table.add(Commands.VIDEO_FPS, 0x00, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x0a, 0x0b);
+		table.add(Commands.VIDEO_FOV, 0x00, 0x01, 0x02);
+		table.add(Commands.PHOTO_MODE, 0x00, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06);
+		table.add(Commands.BURST_RATE, 0x00, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06);
+		table.add(Commands.TIMELAPSE_INTERVAL, 0x00, 0x01, 0x02, 0x05, 0x0a, 0x14, 0x1e, 0x3c);
+		table.add(Commands.BEEP_VOLUME, 0x00, 0x01, 0x02);
+		table.add(Commands.SPOT_METER, 0x00, 0x01);
+		table.add(Commands.LEDS, 0x00, 0x01, 0x02);
+		table.add(Commands.AUTO_POWER_OFF, 0x00, 0x01, 0x02, 0x03);
+		
+		return table;
+	}
+	
+	// Blocking call
+	// Request for a getter. A failed request is retried with jittered exponential backoff,
+	// and with hedging enabled a duplicate is sent once the first has taken longer than 95%
+	// of recent requests, taking whichever response arrives first. attempt is the number of
+	// the first attempt to make (1 unless a request for the url has already failed).
+	private HttpResponse read(String url, RequestClass requestClass, int attempt) throws IOException
+	{
+		while(true)
+		{
+			if(attempt > 1)
+			{
+				m_retryPolicy.backoff(attempt - 1);
+			}
+			
+			long start = System.currentTimeMillis();
+			
+			try
+			{
+				long hedgeDelay = m_hedging ? m_latency.getPercentile(requestClass, HEDGE_PERCENTILE) : -1;
+				int budget = m_latency.getBudget(requestClass);
+				
+				HttpResponse response;
+				if(hedgeDelay > 0)
+				{
+					response = HttpUtils.checkSuccessful(HttpUtils.requestHedged(url, budget, hedgeDelay), url);
+				}
+				else
+				{
+					response = HttpUtils.requestSuccessful(url, budget);
+				}
+				
+				m_latency.recordRoundTrip(requestClass, System.currentTimeMillis() - start);
+				
+				return response;
+			}
+			catch(IOException e)
+			{
+				if(e instanceof SocketTimeoutException)
+				{
+					m_latency.recordTimeout(requestClass);
+				}
+				
+				if(!m_retryPolicy.shouldRetry(attempt, e))
+				{
+					throw e;
+				}
+				
+				Log.d(TAG, "Retrying " + url + " after attempt " + attempt + " failed: " + e.getMessage());
+				attempt++;
+			}
+		}
+	}
+	
+	// Blocking call
+	// Take the response to a request that was started early if it succeeded, otherwise
+	// request the url again with the usual retries. prefetched may be null.
+	private HttpResponse read(String url, RequestClass requestClass, HttpFuture prefetched) throws IOException
+	{
+		if(prefetched != null)
+		{
+			try
+			{
+				HttpResponse response = prefetched.get();
+				
+				if(response.isSuccess())
+				{
+					return response;
+				}
+				
+				Log.d(TAG, "Prefetched " + url + " failed: HTTP " + response.getStatusCode());
+				response.release();
+			}
+			catch(Exception e)
+			{
+				Log.d(TAG, "Prefetched " + url + " failed: " + e.getMessage());
+			}
 		}
 		
-		return "Unknown";
-	}
-	
-	public String getPreviewUrl()
-	{
-	    return "http://" + m_ipAddress + ":8080/live/amba.m3u8";
+		return read(url, requestClass, 1);
 	}
 	
-	private String makeRequestUrl(String command, String param)
+	// Blocking call
+	private String readString(String url, RequestClass requestClass, HttpFuture prefetched) throws IOException
 	{
-		String url = "http://" + m_ipAddress + command + "?t=" + m_wifiPassword;
+		HttpResponse response = read(url, requestClass, prefetched);
 		
-		if(param.length() > 0)
+		try
 		{
-			url += ("&p=" + param);
+			return response.getBodyAsString();
+		}
+		finally
+		{
+			response.release();
 		}
-		
-		return url;
 	}
 	
-	public Future<?> execute(final String url)
+	// Non-Blocking call
+	public GoProFuture<Void> startPreview()
 	{
-		return m_executor.submit(new Runnable() {
+		return execute(Commands.PREVIEW, 0x02, new GoProShadowStatus.Change() {
 			@Override
-			public void run() 
+			public void apply(GoProCameraStatus status)
 			{
-				HttpUtils.sendRequest(url);
+				status.previewOn = true;
 			}
 		});
 	}
-	
-	// Non-Blocking call
-	public void startPreview()
-	{
-		execute(makeRequestUrl(Commands.PREVIEW, "%02"));
-	}
 
 	// Non-Blocking call
-	public void stopPreview()
+	public GoProFuture<Void> stopPreview()
 	{
-		execute(makeRequestUrl(Commands.PREVIEW, "%00"));
+		return execute(Commands.PREVIEW, 0x00, new GoProShadowStatus.Change() {
+			@Override
+			public void apply(GoProCameraStatus status)
+			{
+				status.previewOn = false;
+			}
+		});
 	}
 	
 	// Non-Blocking call
-	public void startShutter()
+	public GoProFuture<Void> startShutter()
 	{
-		execute(makeRequestUrl(Commands.SHUTTER, "%01"));
+		return execute(Commands.SHUTTER, 0x01);
 	}
 
 	// Non-Blocking call
-	public void stopShutter()
+	public GoProFuture<Void> stopShutter()
+	{
+		return execute(Commands.SHUTTER, 0x00);
+	}
+	
+	// Non-Blocking call
+	// Start or stop the shutter at the same moment as the other cameras sharing the barrier,
+	// see GoProSyncShutter. The urgent lane is held while waiting for the others to arm.
+	public GoProFuture<GoProSyncShutter.Ack> syncShutter(boolean on, final GoProSyncShutter barrier)
 	{
-		execute(makeRequestUrl(Commands.SHUTTER, "%00"));
+		final GoProFuture<GoProSyncShutter.Ack> future = new GoProFuture<GoProSyncShutter.Ack>();
+		final int param = on ? 0x01 : 0x00;
+		
+		try
+		{
+			m_dispatcher.submit(Priority.URGENT, new Runnable() {
+				@Override
+				public void run() 
+				{
+					future.complete(sendSynchronized(Commands.SHUTTER, param, barrier));
+				}
+			});
+		}
+		catch(RejectedExecutionException e)
+		{
+			// Don't hold the other cameras up waiting for this one
+			barrier.arrive();
+			future.complete(GoProResult.<GoProSyncShutter.Ack>failure(e, GoProResult.NO_STATUS_CODE, 0));
+		}
+		
+		return future;
 	}
 	
 	// Non-Blocking call
-	public void powerOn()
+	public GoProFuture<Void> powerOn()
 	{
-		execute(makeRequestUrl(Commands.POWER, "%01"));
+		return execute(Commands.POWER, 0x01);
 	}
 	
 	// Non-Blocking call
-	public void powerOff()
+	public GoProFuture<Void> powerOff()
 	{
-		execute(makeRequestUrl(Commands.POWER, "%00"));
+		return execute(Commands.POWER, 0x00);
 	}
 	
 	// Non-Blocking call
-	public void startLocate()
+	public GoProFuture<Void> startLocate()
 	{	
-	    execute(makeRequestUrl(Commands.LOCATE, "%01"));
+	    return execute(Commands.LOCATE, 0x01, new GoProShadowStatus.Change() {
+	    	@Override
+	    	public void apply(GoProCameraStatus status)
+	    	{
+	    		status.locate = true;
+	    	}
+	    });
 	}
 	
 	// Non-Blocking call
-	public void stopLocate()
+	public GoProFuture<Void> stopLocate()
 	{	
-	    execute(makeRequestUrl(Commands.LOCATE, "%00"));
+	    return execute(Commands.LOCATE, 0x00, new GoProShadowStatus.Change() {
+	    	@Override
+	    	public void apply(GoProCameraStatus status)
+	    	{
+	    		status.locate = false;
+	    	}
+	    });
 	}
 	
 	// Non-Blocking call
-	public void setCameraMode(CameraMode mode)
+	public GoProFuture<Void> setCameraMode(final CameraMode mode)
 	{	
-		String param = "";
+		int param = -1;
 	    switch(mode)
 	    {
 	        case Video:
-	        	param = "%00";
+	        	param = 0x00;
 	            break;
 	        case Photo:
-	        	param = "%01";
+	        	param = 0x01;
 	            break;
 	        case Burst:
-	        	param = "%02";
+	        	param = 0x02;
 	            break;
 	        case Timelapse:
-	        	param = "%03";
+	        	param = 0x03;
 	            break;
 	        case Settings:
-	        	param = "%07";
+	        	param = 0x07;
 	            break;
 	        case Playback:
-	        	param = "%05";
+	        	param = 0x05;
 	        	break;
 	        default:
-	        	param = "";
+	        	param = -1;
 	    }
 	    
-	    if(param.length() > 0)
+	    if(param < 0)
 	    {
-	    	execute(makeRequestUrl(Commands.CAMERA_MODE, param));
+	    	return unsupported("camera mode", mode);
 	    }
+	    
+	    return execute(Commands.CAMERA_MODE, param, new GoProShadowStatus.Change() {
+	    	@Override
+	    	public void apply(GoProCameraStatus status)
+	    	{
+	    		status.cameraMode = mode;
+	    	}
+	    });
 	}
 	
 	// Non-Blocking call
-	public void setDefaultCameraMode(CameraMode mode)
+	public GoProFuture<Void> setDefaultCameraMode(final CameraMode mode)
 	{	
-		String param = "";
+		int param = -1;
 	    switch(mode)
 	    {
 	        case Video:
-	        	param = "%00";
+	        	param = 0x00;
 	            break;
 	        case Photo:
-	        	param = "%01";
+	        	param = 0x01;
 	            break;
 	        case Burst:
-	        	param = "%02";
+	        	param = 0x02;
 	            break;
 	        case Timelapse:
-	        	param = "%03";
+	        	param = 0x03;
 	            break;
 	        default:
-	        	param = "";
+	        	param = -1;
 	    }
 	    
-	    if(param.length() > 0)
+	    if(param < 0)
 	    {
-	    	execute(makeRequestUrl(Commands.DEFAULT_CAMERA_MODE, param));
+	    	return unsupported("default camera mode", mode);
 	    }
+	    
+	    return execute(Commands.DEFAULT_CAMERA_MODE, param, new GoProShadowStatus.Change() {
+	    	@Override
+	    	public void apply(GoProCameraStatus status)
+	    	{
+	    		status.defaultCameraMode = mode;
+	    	}
+	    });
 	}
 	
 	// Non-Blocking call
-	public void setOrientation(Orientation orientation)
+	public GoProFuture<Void> setOrientation(final Orientation orientation)
 	{	
-		String param = "";
+		int param = -1;
 	    switch(orientation)
 	    {
 	        case Up:
-	        	param = "%00";
+	        	param = 0x00;
 	            break;
 	        case Down:
-	        	param = "%01";
+	        	param = 0x01;
 	            break;
 	        default:
-	        	param = "";
+	        	param = -1;
 	    }
 	    
-	    if(param.length() > 0)
+	    if(param < 0)
 	    {
-	    	execute(makeRequestUrl(Commands.ORIENTATION, param));
+	    	return unsupported("orientation", orientation);
 	    }
+	    
+	    return execute(Commands.ORIENTATION, param, new GoProShadowStatus.Change() {
+	    	@Override
+	    	public void apply(GoProCameraStatus status)
+	    	{
+	    		status.orientation = orientation;
+	    	}
+	    });
 	}
 	
 	// Non-Blocking call
-	public void setProtune(boolean on)
+	public GoProFuture<Void> setProtune(final boolean on)
 	{	
-		String param = on ? "%01" : "%00";
-	    execute(makeRequestUrl(Commands.PROTUNE, param));
+		int param = on ? 0x01 : 0x00;
+	    return execute(Commands.PROTUNE, param, new GoProShadowStatus.Change() {
+	    	@Override
+	    	public void apply(GoProCameraStatus status)
+	    	{
+	    		status.protuneOn = on;
+	    	}
+	    });
 	}
 	
 	// Non-Blocking call
-	public void setOneButton(boolean on)
+	public GoProFuture<Void> setOneButton(final boolean on)
 	{	
 		Log.d(TAG, "setOneButton " + on);
 		
-		String param = on ? "%01" : "%00";
-	    execute(makeRequestUrl(Commands.ONE_BUTTON, param));
+		int param = on ? 0x01 : 0x00;
+	    return execute(Commands.ONE_BUTTON, param, new GoProShadowStatus.Change() {
+	    	@Override
+	    	public void apply(GoProCameraStatus status)
+	    	{
+	    		status.oneButtonOn = on;
+	    	}
+	    });
 	}
 	
 	// Non-Blocking call
-	public void setOSD(boolean on)
+	public GoProFuture<Void> setOSD(final boolean on)
 	{	
-		String param = on ? "%01" : "%00";
-	    execute(makeRequestUrl(Commands.OSD, param));
+		int param = on ? 0x01 : 0x00;
+	    return execute(Commands.OSD, param, new GoProShadowStatus.Change() {
+	    	@Override
+	    	public void apply(GoProCameraStatus status)
+	    	{
+	    		status.osdOn = on;
+	    	}
+	    });
 	}
 	
 	// Non-Blocking call
-	public void setVideoStandard(VideoStandard standard)
+	public GoProFuture<Void> setVideoStandard(final VideoStandard standard)
 	{	
-		String param = "";
+		int param = -1;
 	    switch(standard)
 	    {
 	        case NTSC:
-	        	param = "%00";
+	        	param = 0x00;
 	            break;
 	        case PAL:
-	        	param = "%01";
+	        	param = 0x01;
 	            break;
 	        default:
-	        	param = "";
+	        	param = -1;
 	    }
 	    
-	    if(param.length() > 0)
+	    if(param < 0)
 	    {
-	    	execute(makeRequestUrl(Commands.VIDEO_STANDARD, param));
+	    	return unsupported("video standard", standard);
 	    }
+	    
+	    return execute(Commands.VIDEO_STANDARD, param, new GoProShadowStatus.Change() {
+	    	@Override
+	    	public void apply(GoProCameraStatus status)
+	    	{
+	    		status.videoStandard = standard;
+	    	}
+	    });
 	}
 	
 	// Non-Blocking call
-	public void setVideoMode(VideoMode mode)
+	public GoProFuture<Void> setVideoMode(final VideoMode mode)
 	{	
 		Log.d(TAG, "setVideoMode " + mode.toString());
-		String param = "";
+		int param = -1;
 	    switch(mode)
 	    {
 	    case VideoMode_WVGA:
-	    	param = "%00";
+	    	param = 0x00;
 	    	break;
 	    case VideoMode_720:
-	    	param = "%01";
+	    	param = 0x01;
 	    	break;
 	    case VideoMode_960:
-	    	param = "%02";
+	    	param = 0x02;
 	    	break;
 	    case VideoMode_1080:
-	    	param = "%03";
+	    	param = 0x03;
 	    	break;
 	    case VideoMode_1440:
-	    	param = "%04";
+	    	param = 0x04;
 	    	break;
 	    case VideoMode_2p7K:
-	    	param = "%05";
+	    	param = 0x05;
 	    	break;
 	    case VideoMode_4K:
-	    	param = "%06";
+	    	param = 0x06;
 	    	break;
 	    case VideoMode_2p7KCinema:
-	    	param = "%07";
+	    	param = 0x07;
 	    	break;
 	    case VideoMode_4KCinema:
-	    	param = "%08";
+	    	param = 0x08;
 	    	break;
 	    case VideoMode_1080SuperView:
-	    	param = "%09";
+	    	param = 0x09;
 	    	break;
 	    case VideoMode_720SuperView:
-	    	param = "%0a";
+	    	param = 0x0a;
 	    	break;
 	    default:
-	        param = "";
+	        param = -1;
 	    }
 	    
-	    if(param.length() > 0)
+	    if(param < 0)
 	    {
-	    	execute(makeRequestUrl(Commands.VIDEO_MODE, param));
+	    	return unsupported("video mode", mode);
 	    }
+	    
+	    return execute(Commands.VIDEO_MODE, param, new GoProShadowStatus.Change() {
+	    	@Override
+	    	public void apply(GoProCameraStatus status)
+	    	{
+	    		status.videoMode = mode;
+	    	}
+	    });
 	}
 	
 	// Non-Blocking call
-	public void setVideoFPS(double fps)
+	public GoProFuture<Void> setVideoFPS(final double fps)
 	{	
 		Log.d(TAG, "setVideoMode " + fps);
 		
-		String param = "";
+		int param = -1;
 	    if(fps == 12)
 	    {
-	    	param = "%00";
+	    	param = 0x00;
 	    }
 	    else if(fps == 15)
 	    {
-	    	param = "%01";
+	    	param = 0x01;
 	    }
 	    else if(fps == 12.5)
 	    {
-	    	param = "%0b";
+	    	param = 0x0b;
 	    }
 	    else if(fps == 24)
 	    {
-	    	param = "%02";
+	    	param = 0x02;
 	    }
 	    else if(fps == 25)
 	    {
-	    	param = "%03";
+	    	param = 0x03;
 	    }
 	    else if(fps == 30)
 	    {
-	    	param = "%04";
+	    	param = 0x04;
 	    }
 	    else if(fps == 48)
 	    {
-	    	param = "%05";
+	    	param = 0x05;
 	    }
 	    else if(fps == 50)
 	    {
-	    	param = "%06";
+	    	param = 0x06;
 	    }
 	    else if(fps == 60)
 	    {
-	    	param = "%07";
+	    	param = 0x07;
 	    }
 	    else if(fps == 100)
 	    {
-	    	param = "%08";
+	    	param = 0x08;
 	    }
 	    else if(fps == 120)
 	    {
-	    	param = "%09";
+	    	param = 0x09;
 	    }
 	    else if(fps == 240)
 	    {
-	    	param = "%0a";
+	    	param = 0x0a;
 	    }
 	    
-	    if(param.length() > 0)
+	    if(param < 0)
 	    {
-	    	execute(makeRequestUrl(Commands.VIDEO_FPS, param));
+	    	return unsupported("frame rate", fps);
 	    }
+	    
+	    return execute(Commands.VIDEO_FPS, param, new GoProShadowStatus.Change() {
+	    	@Override
+	    	public void apply(GoProCameraStatus status)
+	    	{
+	    		status.videoFrameRate = fps;
+	    	}
+	    });
 	}
 	
 	// Non-Blocking call
-	public void setVideoFOV(FieldOfView fov)
+	public GoProFuture<Void> setVideoFOV(final FieldOfView fov)
 	{	
-		String param = "";
+		int param = -1;
 	    switch(fov)
 	    {
 	    case Wide:
-	    	param = "%00";
+	    	param = 0x00;
 	    	break;
 	    case Medium:
-	    	param = "%01";
+	    	param = 0x01;
 	    	break;
 	    case Narrow:
-	    	param = "%02";
+	    	param = 0x02;
 	    	break;
 	    default:
-	        param = "";
+	        param = -1;
 	    }
 	    
-	    if(param.length() > 0)
+	    if(param < 0)
 	    {
-	    	execute(makeRequestUrl(Commands.VIDEO_FOV, param));
+	    	return unsupported("field of view", fov);
 	    }
+	    
+	    return execute(Commands.VIDEO_FOV, param, new GoProShadowStatus.Change() {
+	    	@Override
+	    	public void apply(GoProCameraStatus status)
+	    	{
+	    		status.videoFOV = fov;
+	    	}
+	    });
 	}
 	
 	// Non-Blocking call
-	public void setPhotoMode(PhotoMode photoMode)
+	public GoProFuture<Void> setPhotoMode(final PhotoMode photoMode)
 	{	
-		String param = "";
+		int param = -1;
 	    switch(photoMode)
 	    {
 	    case PhotoMode_5mpWide:
-	    	param = "%02";
+	    	param = 0x02;
 	    	break;
 	    case PhotoMode_5mpMedium:
-	    	param = "%03";
+	    	param = 0x03;
 	    	break;
 	    case PhotoMode_7mpWide:
-	    	param = "%04";
+	    	param = 0x04;
 	    	break;
 	    case PhotoMode_7mpMedium:
-	    	param = "%06";
+	    	param = 0x06;
 	    	break;
 	    case PhotoMode_8mpMedium:
-	    	param = "%01";
+	    	param = 0x01;
 	    	break;
 	    case PhotoMode_11mpWide:
-	    	param = "%00";
+	    	param = 0x00;
 	    	break;
 	    case PhotoMode_12mpWide:
-	    	param = "%05";
+	    	param = 0x05;
 	    	break;
 	    default:
-	        param = "";
+	        param = -1;
 	    }
 	    
-	    if(param.length() > 0)
+	    if(param < 0)
 	    {
-	    	execute(makeRequestUrl(Commands.PHOTO_MODE, param));
+	    	return unsupported("photo mode", photoMode);
 	    }
+	    
+	    return execute(Commands.PHOTO_MODE, param, new GoProShadowStatus.Change() {
+	    	@Override
+	    	public void apply(GoProCameraStatus status)
+	    	{
+	    		status.photoMode = photoMode;
+	    	}
+	    });
 	}
 	
 	// Non-Blocking call
-	public void setBurstRate(BurstRate burstRate)
+	public GoProFuture<Void> setBurstRate(final BurstRate burstRate)
 	{	
 		Log.d(TAG, "setBurstRate " + burstRate.toString());
 		
-		String param = "";
+		int param = -1;
 	    switch(burstRate)
 	    {
 	    case BurstRate_3_1s:
-	    	param = "%00";
+	    	param = 0x00;
 	    	break;
 	    case BurstRate_5_1s:
-	    	param = "%01";
+	    	param = 0x01;
 	    	break;
 	    case BurstRate_10_1s:
-	    	param = "%02";
+	    	param = 0x02;
 	    	break;
 	    case BurstRate_10_2s:
-	    	param = "%03";
+	    	param = 0x03;
 	    	break;
 	    case BurstRate_30_1s:
-	    	param = "%04";
+	    	param = 0x04;
 	    	break;
 	    case BurstRate_30_2s:
-	    	param = "%05";
+	    	param = 0x05;
 	    	break;
 	    case BurstRate_30_3s:
-	    	param = "%06";
+	    	param = 0x06;
 	    	break;
 	    default:
-	        param = "";
+	        param = -1;
 	    }
 	    
-	    if(param.length() > 0)
+	    if(param < 0)
 	    {
-	    	execute(makeRequestUrl(Commands.BURST_RATE, param));
+	    	return unsupported("burst rate", burstRate);
 	    }
+	    
+	    return execute(Commands.BURST_RATE, param, new GoProShadowStatus.Change() {
+	    	@Override
+	    	public void apply(GoProCameraStatus status)
+	    	{
+	    		status.burstRate = burstRate;
+	    	}
+	    });
 	}
 	
 	// Non-Blocking call
-	public void setTimelapseInterval(double interval)
+	public GoProFuture<Void> setTimelapseInterval(final double interval)
 	{	
-		String param = "";
+		int param = -1;
 	    if(interval == 0.5)
 	    {
-	    	param = "%00";
+	    	param = 0x00;
 	    }
 	    else if(interval == 1)
 	    {
-	    	param = "%01";
+	    	param = 0x01;
 	    }
 	    else if(interval == 2)
 	    {
-	    	param = "%02";
+	    	param = 0x02;
 	    }
 	    else if(interval == 5)
 	    {
-	    	param = "%05";
+	    	param = 0x05;
 	    }
 	    else if(interval == 10)
 	    {
-	    	param = "%0a";
+	    	param = 0x0a;
 	    }
 	    else if(interval == 20)
 	    {
-	    	param = "%14";
+	    	param = 0x14;
 	    }
 	    else if(interval == 30)
 	    {
-	    	param = "%1e";
+	    	param = 0x1e;
 	    }
 	    else if(interval == 60)
 	    {
-	    	param = "%3c";
+	    	param = 0x3c;
 	    }
 	    
-	    if(param.length() > 0)
+	    if(param < 0)
 	    {
-	    	execute(makeRequestUrl(Commands.TIMELAPSE_INTERVAL, param));
+	    	return unsupported("timelapse interval", interval);
 	    }
+	    
+	    return execute(Commands.TIMELAPSE_INTERVAL, param, new GoProShadowStatus.Change() {
+	    	@Override
+	    	public void apply(GoProCameraStatus status)
+	    	{
+	    		status.timelapseInterval = interval;
+	    	}
+	    });
 	}
 	
 	// Non-Blocking call
-	public void setBeepVolume(int volume)
+	public GoProFuture<Void> setBeepVolume(int volume)
 	{	
-		String param = "%00";
+		int param = 0x00;
+		final int level; // As reported in the status
 		
 		if(volume > 0 && volume <= 70)
 		{
-			param = "%01"; // 70%
+			param = 0x01; // 70%
+			level = 70;
 		}
 		else if(volume > 70)
 		{
-			param = "%02"; // 100%
+			param = 0x02; // 100%
+			level = 100;
+		}
+		else
+		{
+			level = 0;
 		}
 		
-	    execute(makeRequestUrl(Commands.BEEP_VOLUME, param));
+	    return execute(Commands.BEEP_VOLUME, param, new GoProShadowStatus.Change() {
+	    	@Override
+	    	public void apply(GoProCameraStatus status)
+	    	{
+	    		status.beepVolume = level;
+	    	}
+	    });
 	}
 	
 	// Non-Blocking call
-	public void setSpotMeter(boolean on)
+	public GoProFuture<Void> setSpotMeter(final boolean on)
 	{	
-		String param = on ? "%01" : "%00";
-	    execute(makeRequestUrl(Commands.SPOT_METER, param));
+		int param = on ? 0x01 : 0x00;
+	    return execute(Commands.SPOT_METER, param, new GoProShadowStatus.Change() {
+	    	@Override
+	    	public void apply(GoProCameraStatus status)
+	    	{
+	    		status.spotMeter = on;
+	    	}
+	    });
 	}
 	
 	// Non-Blocking call
-	public void setLEDs(LEDs leds)
+	public GoProFuture<Void> setLEDs(final LEDs leds)
 	{	
-		String param = "";
+		int param = -1;
 	    switch(leds)
 	    {
 	    case LEDs_Off:
-	    	param = "%00";
+	    	param = 0x00;
 	    	break;
 	    case LEDs_2:
-	    	param = "%01";
+	    	param = 0x01;
 	    	break;
 	    case LEDs_4:
-	    	param = "%02";
+	    	param = 0x02;
 	    	break;
 	    default:
-	        param = "";
+	        param = -1;
 	    }
 	    
-	    if(param.length() > 0)
+	    if(param < 0)
 	    {
-	    	execute(makeRequestUrl(Commands.LEDS, param));
+	    	return unsupported("LEDs", leds);
 	    }
+	    
+	    return execute(Commands.LEDS, param, new GoProShadowStatus.Change() {
+	    	@Override
+	    	public void apply(GoProCameraStatus status)
+	    	{
+	    		status.leds = leds;
+	    	}
+	    });
 	}
 	
 	// Non-Blocking call
-	public void setAutoPowerOff(AutoPowerOff autoPowerOff)
+	public GoProFuture<Void> setAutoPowerOff(final AutoPowerOff autoPowerOff)
 	{	
-		String param = "";
+		int param = -1;
 	    switch(autoPowerOff)
 	    {
 	    case AutoPowerOff_Never:
-	    	param = "%00";
+	    	param = 0x00;
 	    	break;
 	    case AutoPowerOff_60:
-	    	param = "%01";
+	    	param = 0x01;
 	    	break;
 	    case AutoPowerOff_120:
-	    	param = "%02";
+	    	param = 0x02;
 	    	break;
 	    case AutoPowerOff_300:
-	    	param = "%03";
+	    	param = 0x03;
 	    	break;
 	    default:
-	        param = "";
+	        param = -1;
 	    }
 	    
-	    if(param.length() > 0)
+	    if(param < 0)
 	    {
-	    	execute(makeRequestUrl(Commands.AUTO_POWER_OFF, param));
+	    	return unsupported("auto power off", autoPowerOff);
 	    }
+	    
+	    return execute(Commands.AUTO_POWER_OFF, param, new GoProShadowStatus.Change() {
+	    	@Override
+	    	public void apply(GoProCameraStatus status)
+	    	{
+	    		status.autoPowerOff = autoPowerOff;
+	    	}
+	    });
 	}
 	
-	// Non-Blocking fire and forget call
-	// Request the camera status, fires the onCameraStatus callback on the GoProCameraListener if successful
-	public void getCameraStatus()
+	// Non-Blocking call
+	// Request the camera status, fires the onCameraStatus callback on the GoProCameraListener if successful.
+	// The four status requests are pipelined on one connection through the HttpAsyncClient, so the
+	// fetch costs about one round trip and doesn't hold up commands queued on the dispatcher.
+	public GoProFuture<GoProCameraStatus> getCameraStatus()
 	{
-		m_executor.submit(new Runnable() {
-			@Override
-			public void run() 
+		final GoProFuture<GoProCameraStatus> future = new GoProFuture<GoProCameraStatus>();
+		final String[] urls = getCameraStatusUrls();
+		final HttpResponse[] responses = new HttpResponse[urls.length];
+		final AtomicInteger outstanding = new AtomicInteger(urls.length);
+		final AtomicInteger statusCode = new AtomicInteger(GoProResult.NO_STATUS_CODE);
+		final AtomicBoolean timedOut = new AtomicBoolean(false);
+		final boolean[] failed = new boolean[urls.length];
+		final long start = System.currentTimeMillis();
+		final int settledVersion = getSettledVersion();
+		HttpAsyncClient.Callback[] callbacks = new HttpAsyncClient.Callback[urls.length];
+		
+		for(int i = 0; i < urls.length; ++i)
+		{
+			final int index = i;
+			
+			callbacks[i] = new HttpAsyncClient.Callback() {
+				@Override
+				public void onResponse(HttpResponse response)
+				{
+					if(response.isSuccess())
+					{
+						statusCode.compareAndSet(GoProResult.NO_STATUS_CODE, response.getStatusCode());
+						responses[index] = response;
+					}
+					else
+					{
+						Log.e(TAG, "getCameraStatus: HTTP " + response.getStatusCode() + " for " + urls[index]);
+						statusCode.set(response.getStatusCode());
+						response.release();
+					}
+					
+					onStatusResponse();
+				}
+				
+				@Override
+				public void onFailure(IOException error)
+				{
+					Log.e(TAG, "getCameraStatus", error);
+					
+					if(error instanceof SocketTimeoutException)
+					{
+						timedOut.set(true);
+					}
+					
+					failed[index] = true;
+					onStatusResponse();
+				}
+				
+				private void onStatusResponse()
+				{
+					if(outstanding.decrementAndGet() > 0)
+					{
+						return;
+					}
+					
+					if(timedOut.get())
+					{
+						m_latency.recordTimeout(RequestClass.STATUS);
+					}
+					else
+					{
+						m_latency.recordRoundTrip(RequestClass.STATUS, System.currentTimeMillis() - start);
+					}
+					
+					// Decode and notify off the I/O thread
+					Runnable decode = new Runnable() {
+						@Override
+						public void run() 
+						{
+							// The status requests are idempotent, try again for any that were lost
+							for(int i = 0; i < urls.length; ++i)
+							{
+								if(failed[i])
+								{
+									try
+									{
+										responses[i] = read(urls[i], RequestClass.STATUS, 2);
+									}
+									catch(Exception e)
+									{
+										Log.e(TAG, "getCameraStatus", e);
+										break;
+									}
+								}
+							}
+							
+							GoProCameraStatus status = makeCameraStatus(responses);
+							long latency = System.currentTimeMillis() - start;
+							rememberStatus(status, settledVersion);
+							if(status != null)
+							{
+								m_listener.onCameraStatus(status);
+								future.complete(GoProResult.success(status, statusCode.get(), latency));
+							}
+							else if(timedOut.get())
+							{
+								m_listener.onError(GoProCameraErrors.TIMEOUT);
+								future.complete(GoProResult.<GoProCameraStatus>failure(new SocketTimeoutException(), statusCode.get(), latency));
+							}
+							else
+							{
+								future.complete(GoProResult.<GoProCameraStatus>failure(new IOException("Failed to read the camera status"), statusCode.get(), latency));
+							}
+						}
+					};
+					
+					try
+					{
+						m_dispatcher.submit(Priority.STATUS, decode);
+					}
+					catch(RejectedExecutionException e)
+					{
+						Log.e(TAG, "getCameraStatus", e);
+						
+						for(HttpResponse response : responses)
+						{
+							if(response != null)
+							{
+								response.release();
+							}
+						}
+						
+						future.complete(GoProResult.<GoProCameraStatus>failure(e, statusCode.get(), System.currentTimeMillis() - start));
+					}
+				}
+			};
+		}
+		
+		HttpAsyncClient.getInstance().pipeline(urls, m_latency.getBudget(RequestClass.STATUS), callbacks);
+		
+		return future;
+	}
+	
+	// The requests that make up the camera status: the status bytes, then video mode, frame rate and burst rate
+	private String[] getCameraStatusUrls()
+	{
+		return new String[] {
+			"http://" + m_ipAddress + Commands.CAMERA_STATUS + "?t=" + m_wifiPassword,
+			// Make sure the command is lowercase for getting (uppercase for setting)
+			"http://" + m_ipAddress + Commands.VIDEO_MODE.toLowerCase() + "?t=" + m_wifiPassword,
+			"http://" + m_ipAddress + Commands.VIDEO_FPS.toLowerCase() + "?t=" + m_wifiPassword,
+			"http://" + m_ipAddress + Commands.BURST_RATE.toLowerCase() + "?t=" + m_wifiPassword
+		};
+	}
+	
+	// Decode the status responses in place, then return their buffers to the pool. If the
+	// camera sent exactly the same bytes as last time, the last status is returned as is.
+	// Only called on the dispatcher's status lane.
+	private GoProCameraStatus makeCameraStatus(HttpResponse[] responses)
+	{
+		try
+		{
+			for(HttpResponse response : responses)
 			{
-				GoProCameraStatus status = getCameraStatusImmediate();
-				if(status != null)
+				if(response == null)
 				{
-					m_listener.onCameraStatus(status);
+					return null;
 				}
 			}
-		});
+			
+			boolean unchanged = (m_decodedStatus != null);
+			for(int i = 0; i < responses.length; ++i)
+			{
+				responses[i].getBodyView(m_statusViews[i]);
+				unchanged = unchanged && m_statusViews[i].contentEquals(m_statusPayloads[i]);
+			}
+			
+			if(unchanged)
+			{
+				return m_decodedStatus;
+			}
+			
+			GoProCameraStatus status = new GoProCameraStatus(m_statusViews[0], m_statusViews[1], m_statusViews[2], m_statusViews[3]);
+			
+			for(int i = 0; i < responses.length; ++i)
+			{
+				m_statusPayloads[i] = m_statusViews[i].toByteArray();
+			}
+			m_decodedStatus = status;
+			
+			return status;
+		}
+		catch(Exception e)
+		{
+			Log.e(TAG, "makeCameraStatus", e);
+		}
+		finally
+		{
+			for(HttpResponse response : responses)
+			{
+				if(response != null)
+				{
+					response.release();
+				}
+			}
+		}
+		
+		return null;
 	}
 	
 	// Blocking call
-	// Request and return the camera status
+	// Request and return the camera status, the four requests are pipelined on one connection
 	public GoProCameraStatus getCameraStatusImmediate()
 	{
-		HttpURLConnection httpConnection = null;
-		
-		int[] statusBytes = null;
+		String[] urls = getCameraStatusUrls();
+		HttpResponse[] responses = null;
+		int settledVersion = getSettledVersion();
 
         try
         {
-        	httpConnection = HttpUtils.openHttpConnection("http://" + m_ipAddress + Commands.CAMERA_STATUS + "?t=" + m_wifiPassword, 5000);
-
-        	statusBytes = HttpUtils.responseToUIntArray(httpConnection);       	
+        	long start = System.currentTimeMillis();
+        	responses = HttpUtils.requestPipelined(urls, m_latency.getBudget(RequestClass.STATUS));
+        	m_latency.recordRoundTrip(RequestClass.STATUS, System.currentTimeMillis() - start);
+        	
+        	for(int i = 0; i < responses.length; ++i)
+        	{
+        		if(!responses[i].isSuccess())
+        		{
+        			responses[i].release();
+        			responses[i] = null;
+        		}
+        	}
         }
-        catch(Exception e)
+        catch(IOException e)
         {
         	Log.e(TAG, "getCameraStatusImmediate", e);
-        	statusBytes = null;
-        }
-        finally
-        {
-        	if(httpConnection != null)
+        	
+        	if(e instanceof SocketTimeoutException)
         	{
-        		httpConnection.disconnect();
+        		m_latency.recordTimeout(RequestClass.STATUS);
         	}
-        }
-        
-        // If successfully read the status bytes...
-        if(statusBytes != null)
-        {
-        	try
-            {
-        		int[] videoModeBytes = getVideoModeImmediate();
-        		int[] videoFPSBytes = getVideoFrameRateImmediate();
-        		int[] burstRateBytes = getBurstRateImmediate();
-        		
-        		GoProCameraStatus status = new GoProCameraStatus(statusBytes, videoModeBytes, videoFPSBytes, burstRateBytes);
-        		
-        		return status;
-            }
-        	catch(Exception e)
+        	
+        	// The requests are idempotent, try them again one at a time
+        	responses = new HttpResponse[urls.length];
+        	for(int i = 0; i < urls.length; ++i)
         	{
-        		Log.e(TAG, "getCameraStatusImmediate", e);
+        		try
+        		{
+        			responses[i] = read(urls[i], RequestClass.STATUS, 2);
+        		}
+        		catch(IOException retryError)
+        		{
+        			Log.e(TAG, "getCameraStatusImmediate", retryError);
+        			break;
+        		}
         	}
         }
         
-        return null;
+        GoProCameraStatus status = makeCameraStatus(responses);
+        rememberStatus(status, settledVersion);
+        
+        return status;
+	}
+	
+	// Non-Blocking call
+	// The shadow status if it was read from the camera within the last maxAge milliseconds,
+	// in which case the future has already completed, otherwise read it from the camera.
+	public GoProFuture<GoProCameraStatus> getStatus(long maxAge)
+	{
+		GoProCameraStatus status = m_shadowStatus.get(maxAge);
+		
+		if(status != null)
+		{
+			return GoProFuture.completed(GoProResult.success(status, GoProResult.NO_STATUS_CODE, 0));
+		}
+		
+		// The status views are only used on the status lane, so read it there
+		final GoProFuture<GoProCameraStatus> future = new GoProFuture<GoProCameraStatus>();
+		Runnable read = new Runnable() {
+			@Override
+			public void run() 
+			{
+				long start = System.currentTimeMillis();
+				GoProCameraStatus status = getCameraStatusImmediate();
+				long latency = System.currentTimeMillis() - start;
+				
+				if(status != null)
+				{
+					future.complete(GoProResult.success(status, HttpURLConnection.HTTP_OK, latency));
+				}
+				else
+				{
+					future.complete(GoProResult.<GoProCameraStatus>failure(new IOException("Failed to read the camera status"), GoProResult.NO_STATUS_CODE, latency));
+				}
+			}
+		};
+		
+		try
+		{
+			m_dispatcher.submit(Priority.STATUS, read);
+		}
+		catch(RejectedExecutionException e)
+		{
+			future.complete(GoProResult.<GoProCameraStatus>failure(e, GoProResult.NO_STATUS_CODE, 0));
+		}
+		
+		return future;
+	}
+	
+	// The shadow status however old it is, or null if the status hasn't been read
+	public GoProCameraStatus getShadowStatus()
+	{
+		return m_shadowStatus.get(Long.MAX_VALUE);
+	}
+	
+	// How long a caller should wait for getStatus() to complete. Enough for a poll already
+	// on the status lane, then the read and its retry.
+	public long getStatusTimeout()
+	{
+		return 3L * m_latency.getBudget(RequestClass.STATUS);
+	}
+	
+	private String getUrl(String command)
+	{
+		return "http://" + m_ipAddress + command;
+	}
+	
+	private String getUrlWithPassword(String command)
+	{
+		return "http://" + m_ipAddress + command + "?t=" + m_wifiPassword;
 	}
 	
 	// Blocking call
-	// Request and return the password
-	private String getWifiNameImmediate()
+	// Request and return the name, prefetched is the request if it has already been sent (or null)
+	private String getWifiNameImmediate(HttpFuture prefetched)
 	{    
 		String name = null;
-		HttpURLConnection httpConnection = null;
 
         try
         {
-        	httpConnection = HttpUtils.openHttpConnection("http://" + m_ipAddress + Commands.NAME, 5000);
-
-        	name = HttpUtils.responseToString(httpConnection);
+        	name = readString(getUrl(Commands.NAME), RequestClass.INFO, prefetched);
         }
         catch(Exception e)
         {
         	Log.e(TAG, "getWifiNameImmediate", e);
         }
-        finally
-        {
-        	if(httpConnection != null)
-        	{
-        		httpConnection.disconnect();
-        	}
-        }
         
         return name;
 	}
 	
 	// Blocking call
-	// Request and return the password
-	private String getWifiPasswordImmediate()
+	// Request and return the password, prefetched is the request if it has already been sent (or null)
+	private String getWifiPasswordImmediate(HttpFuture prefetched)
 	{    
 		String password = null;
-		HttpURLConnection httpConnection = null;
 
         try
         {
-        	httpConnection = HttpUtils.openHttpConnection("http://" + m_ipAddress + Commands.PASSWORD, 5000);
-
         	// Strip off the first 2 characters of the response to 
             // get the password - these appear to represent the
             // password length
-        	password = HttpUtils.responseToString(httpConnection);       	
+        	password = readString(getUrl(Commands.PASSWORD), RequestClass.INFO, prefetched);       	
         	password = password.substring(2);
         }
         catch(Exception e)
         {
         	Log.e(TAG, "getWifiPasswordImmediate", e);
         }
-        finally
-        {
-        	if(httpConnection != null)
-        	{
-        		httpConnection.disconnect();
-        	}
-        }
         
         return password;
 	}
 	
 	// Blocking call
-	// Request and return the bacpac status
-	private GoProBacpacStatus getBacpacStatusImmediate()
+	// Request and return the bacpac status, decoded through the given view. prefetched is
+	// the request if it has already been sent (or null).
+	private GoProBacpacStatus getBacpacStatusImmediate(UnsignedByteView view, HttpFuture prefetched)
 	{
 		GoProBacpacStatus status = null;
-		HttpURLConnection httpConnection = null;
 
         try
         {
-        	httpConnection = HttpUtils.openHttpConnection("http://" + m_ipAddress + Commands.BACPAC_STATUS + "?t=" + m_wifiPassword, 5000);
-
-        	int[] statusBytes = HttpUtils.responseToUIntArray(httpConnection);
-        	status = new GoProBacpacStatus(statusBytes);
+        	status = readBacpacStatus(view, prefetched);
         }
         catch(Exception e)
         {
         	Log.e(TAG, "getBacpacStatusImmediate", e);
         	status = null;
         }
-        finally
-        {
-        	if(httpConnection != null)
-        	{
-        		httpConnection.disconnect();
-        	}
-        }
         
         return status;
 	}
 	
 	// Blocking call
-	// Request and return the Camera Info - name, model, firmware
-	private GoProCameraInfo getCameraInfoImmediate()
+	// As getBacpacStatusImmediate, but throws if the status can't be read
+	private GoProBacpacStatus readBacpacStatus(UnsignedByteView view, HttpFuture prefetched) throws IOException
+	{
+		HttpResponse response = read(getUrlWithPassword(Commands.BACPAC_STATUS), RequestClass.STATUS, prefetched);
+		
+		try
+		{
+			return new GoProBacpacStatus(response.getBodyView(view));
+		}
+		finally
+		{
+			response.release();
+		}
+	}
+	
+	// Blocking call
+	// Request and return the Camera Info - name, model, firmware. prefetched is the request
+	// if it has already been sent (or null).
+	private GoProCameraInfo getCameraInfoImmediate(HttpFuture prefetched)
 	{
 		GoProCameraInfo info = null;
-		HttpURLConnection httpConnection = null;
 
         try
         {
-        	httpConnection = HttpUtils.openHttpConnection("http://" + m_ipAddress + Commands.CAMERA_INFO + "?t=" + m_wifiPassword, 5000);
-
-        	String rawResponse = HttpUtils.responseToString(httpConnection);
+        	String rawResponse = readString(getUrlWithPassword(Commands.CAMERA_INFO), RequestClass.INFO, prefetched);
         	info = new GoProCameraInfo(rawResponse);
         }
         catch(Exception e)
@@ -986,101 +2570,7 @@ public class GoProCamera
         	Log.e(TAG, "getCameraInfoImmediate", e);
         	info = null;
         }
-        finally
-        {
-        	if(httpConnection != null)
-        	{
-        		httpConnection.disconnect();
-        	}
-        }
         
         return info;
 	}
-	
-	// Blocking call
-	private int[] getVideoModeImmediate()
-	{
-		int[] videoModeBytes = null;		
-		HttpURLConnection httpConnection = null;
-
-        try
-        {
-        	// Make sure the command is lowercase for getting (uppercase for setting)
-        	httpConnection = HttpUtils.openHttpConnection("http://" + m_ipAddress + Commands.VIDEO_MODE.toLowerCase() + "?t=" + m_wifiPassword, 5000);
-
-        	videoModeBytes = HttpUtils.responseToUIntArray(httpConnection);
-        }
-        catch(Exception e)
-        {
-        	Log.e(TAG, "getVideoModeImmediate", e);
-        	videoModeBytes = null;
-        }
-        finally
-        {
-        	if(httpConnection != null)
-        	{
-        		httpConnection.disconnect();
-        	}
-        }
-        
-        return videoModeBytes;
-	}
-	
-	// Blocking call
-	private int[] getVideoFrameRateImmediate()
-	{
-		int[] videoFrameRateBytes = null;		
-		HttpURLConnection httpConnection = null;
-
-        try
-        {
-        	// Make sure the command is lowercase for getting (uppercase for setting)
-        	httpConnection = HttpUtils.openHttpConnection("http://" + m_ipAddress + Commands.VIDEO_FPS.toLowerCase() + "?t=" + m_wifiPassword, 5000);
-
-        	videoFrameRateBytes = HttpUtils.responseToUIntArray(httpConnection);
-        }
-        catch(Exception e)
-        {
-        	Log.e(TAG, "getVideoFrameRateImmediate", e);
-        	videoFrameRateBytes = null;
-        }
-        finally
-        {
-        	if(httpConnection != null)
-        	{
-        		httpConnection.disconnect();
-        	}
-        }
-        
-        return videoFrameRateBytes;
-	}
-	
-	// Blocking call
-	private int[] getBurstRateImmediate()
-	{
-		int[] burstRateBytes = null;		
-		HttpURLConnection httpConnection = null;
-
-        try
-        {
-        	// Make sure the command is lowercase for getting (uppercase for setting)
-        	httpConnection = HttpUtils.openHttpConnection("http://" + m_ipAddress + Commands.BURST_RATE.toLowerCase() + "?t=" + m_wifiPassword, 5000);
-
-        	burstRateBytes = HttpUtils.responseToUIntArray(httpConnection);
-        }
-        catch(Exception e)
-        {
-        	Log.e(TAG, "getBurstRateImmediate", e);
-        	burstRateBytes = null;
-        }
-        finally
-        {
-        	if(httpConnection != null)
-        	{
-        		httpConnection.disconnect();
-        	}
-        }
-        
-        return burstRateBytes;
-	}	
 };
\ No newline at end of file
@@ -28,4 +28,5 @@ public class GoProCameraErrors
 {
 	public static String NOT_FOUND = "NotFound";
 	public static String DISCONNECTED = "Disconnected";
+	public static String TIMEOUT = "Timeout";
 }
@@ -79,6 +79,14 @@ public class GoProCameraInfo
 		}	
 	}
 	
+	// Rebuild the info from the parts that were parsed out of a response before
+	public GoProCameraInfo(String modelId, String firmware)
+	{
+		this.modelId = modelId;
+		this.modelName = getModelName(modelId);
+		this.firmware = firmware;
+	}
+	
 	private static String getModelName(String modelId)
 	{		
 		if(modelId.compareToIgnoreCase("HD2.08") == 0)
@@ -24,10 +24,21 @@
 
 package com.droidscript.plugins;
 
+import java.util.List;
+
 public interface GoProCameraListener 
 {
 	void onConnected();
 	void onError(String error);
 	void onReady();
 	void onCameraStatus(GoProCameraStatus status);
+	
+	// Only the status properties that changed since the last status read from the camera
+	void onCameraStatusChanged(List<GoProCameraStatus.Change> changes);
+	
+	// The failure detector has changed its mind about whether the camera is there
+	void onHealthChanged(FailureDetector.Health health);
+	
+	// Reconnected by itself after losing the camera, downtime is milliseconds from lost to reconnected
+	void onReconnected(long downtime);
 }
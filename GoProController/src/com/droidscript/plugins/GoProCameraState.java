@@ -0,0 +1,87 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview Immutable snapshot of what is known about a connected camera.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+// The camera publishes a new snapshot whenever something changes, so a snapshot can be
+// read from any thread without locking. The bacpac status and camera info it holds are
+// never modified once they have been decoded.
+public final class GoProCameraState
+{
+	public static final GoProCameraState DISCONNECTED = new GoProCameraState(null, null, null);
+
+	private final String m_wifiName;
+	private final GoProBacpacStatus m_bacpacStatus;
+	private final GoProCameraInfo m_cameraInfo;
+
+	public GoProCameraState(String wifiName, GoProBacpacStatus bacpacStatus, GoProCameraInfo cameraInfo)
+	{
+		m_wifiName = wifiName;
+		m_bacpacStatus = bacpacStatus;
+		m_cameraInfo = cameraInfo;
+	}
+
+	public GoProCameraState withBacpacStatus(GoProBacpacStatus bacpacStatus)
+	{
+		return new GoProCameraState(m_wifiName, bacpacStatus, m_cameraInfo);
+	}
+
+	public GoProCameraState withCameraInfo(GoProCameraInfo cameraInfo)
+	{
+		return new GoProCameraState(m_wifiName, m_bacpacStatus, cameraInfo);
+	}
+
+	public boolean isConnected()
+	{
+		return m_wifiName != null;
+	}
+
+	// The name of the camera's Wifi hotspot, null if not connected
+	public String getWifiName()
+	{
+		return m_wifiName;
+	}
+
+	// The last bacpac status polled, null if it couldn't be read
+	public GoProBacpacStatus getBacpacStatus()
+	{
+		return m_bacpacStatus;
+	}
+
+	// Read when the camera becomes ready, null until then
+	public GoProCameraInfo getCameraInfo()
+	{
+		return m_cameraInfo;
+	}
+
+	public boolean isReady()
+	{
+		return m_bacpacStatus != null && m_bacpacStatus.isReady();
+	}
+
+	public boolean isPowerOn()
+	{
+		return m_bacpacStatus != null && m_bacpacStatus.isPowerOn();
+	}
+}
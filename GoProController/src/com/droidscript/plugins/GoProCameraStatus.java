@@ -24,6 +24,9 @@
 
 package com.droidscript.plugins;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.droidscript.plugins.GoProDefinitions.AutoPowerOff;
 import com.droidscript.plugins.GoProDefinitions.BurstRate;
 import com.droidscript.plugins.GoProDefinitions.CameraMode;
@@ -62,6 +65,29 @@ public class GoProCameraStatus {
 		public static final int RECORDING = 29;
 		public static final int STATUS_BITS_2 = 30;
 	}
+	
+	// Each of the status properties, for reporting what changed between two statuses
+	public enum Field {
+		VIDEO_STANDARD, VIDEO_MODE, VIDEO_FRAME_RATE, VIDEO_FOV, VIDEO_RECORDING_TIME, VIDEO_AVAILABLE_TIME, VIDEO_COUNT, VIDEO_RECORDING,
+		PHOTO_MODE, PHOTO_COUNT, PHOTOS_AVAILABLE,
+		BURST_RATE, BURST_RECORDING,
+		TIMELAPSE_INTERVAL,
+		CAMERA_MODE, DEFAULT_CAMERA_MODE, PREVIEW, ORIENTATION, ONE_BUTTON, OSD, LOCATE, PROTUNE, BATTERY_LEVEL, SD_CARD, AUTO_POWER_OFF, BEEP_VOLUME, LEDS, SPOT_METER
+	}
+	
+	// A property that has changed, the old value is null if there was no earlier status
+	public static class Change {
+		public Field field;
+		public Object oldValue;
+		public Object newValue;
+		
+		public Change(Field field, Object oldValue, Object newValue)
+		{
+			this.field = field;
+			this.oldValue = oldValue;
+			this.newValue = newValue;
+		}
+	}
 
 	// Video Properties
 	public VideoStandard videoStandard = VideoStandard.PAL;
@@ -101,14 +127,132 @@ public class GoProCameraStatus {
 	public LEDs leds = LEDs.LEDs_Unknown;
 	public boolean spotMeter = false;
 
-	public GoProCameraStatus(int[] statusBytes, int[] videoModeBytes, int[] videoFrameRateBytes, int[] burstRateBytes)
+	public GoProCameraStatus(UnsignedByteView statusBytes, UnsignedByteView videoModeBytes, UnsignedByteView videoFrameRateBytes, UnsignedByteView burstRateBytes)
 	{
 		initialiseFromBytes(statusBytes, videoModeBytes, videoFrameRateBytes, burstRateBytes);
 	}
 
-	public void initialiseFromBytes(int[] statusBytes, int[] videoModeBytes, int[] videoFrameRateBytes, int[] burstRateBytes) 
+	public GoProCameraStatus(GoProCameraStatus other)
+	{
+		videoStandard = other.videoStandard;
+		videoMode = other.videoMode;
+		videoFrameRate = other.videoFrameRate;
+		videoFOV = other.videoFOV;
+		videoRecordingTime = other.videoRecordingTime;
+		videoAvailableTime = other.videoAvailableTime;
+		videoCount = other.videoCount;
+		videoRecording = other.videoRecording;
+
+		photoMode = other.photoMode;
+		photoCount = other.photoCount;
+		photosAvailable = other.photosAvailable;
+
+		burstRate = other.burstRate;
+		burstRecording = other.burstRecording;
+
+		timelapseInterval = other.timelapseInterval;
+
+		cameraMode = other.cameraMode;
+		defaultCameraMode = other.defaultCameraMode;
+		previewOn = other.previewOn;
+		orientation = other.orientation;
+		oneButtonOn = other.oneButtonOn;
+		osdOn = other.osdOn;
+		locate = other.locate;
+		protuneOn = other.protuneOn;
+		batteryLevel = other.batteryLevel;
+		sdCard = other.sdCard;
+		autoPowerOff = other.autoPowerOff;
+		beepVolume = other.beepVolume;
+		leds = other.leds;
+		spotMeter = other.spotMeter;
+	}
+
+	// The properties that differ from the previous status, every property if previous is null
+	public List<Change> getChanges(GoProCameraStatus previous)
 	{
-		int statusBits1 = statusBytes[StatusBytes.STATUS_BITS_1];
+		List<Change> changes = new ArrayList<Change>();
+		
+		for(Field field : Field.values())
+		{
+			Object value = get(field);
+			Object oldValue = (previous != null) ? previous.get(field) : null;
+			
+			if(!value.equals(oldValue))
+			{
+				changes.add(new Change(field, oldValue, value));
+			}
+		}
+		
+		return changes;
+	}
+	
+	public Object get(Field field)
+	{
+		switch(field)
+		{
+		case VIDEO_STANDARD:
+			return videoStandard;
+		case VIDEO_MODE:
+			return videoMode;
+		case VIDEO_FRAME_RATE:
+			return videoFrameRate;
+		case VIDEO_FOV:
+			return videoFOV;
+		case VIDEO_RECORDING_TIME:
+			return videoRecordingTime;
+		case VIDEO_AVAILABLE_TIME:
+			return videoAvailableTime;
+		case VIDEO_COUNT:
+			return videoCount;
+		case VIDEO_RECORDING:
+			return videoRecording;
+		case PHOTO_MODE:
+			return photoMode;
+		case PHOTO_COUNT:
+			return photoCount;
+		case PHOTOS_AVAILABLE:
+			return photosAvailable;
+		case BURST_RATE:
+			return burstRate;
+		case BURST_RECORDING:
+			return burstRecording;
+		case TIMELAPSE_INTERVAL:
+			return timelapseInterval;
+		case CAMERA_MODE:
+			return cameraMode;
+		case DEFAULT_CAMERA_MODE:
+			return defaultCameraMode;
+		case PREVIEW:
+			return previewOn;
+		case ORIENTATION:
+			return orientation;
+		case ONE_BUTTON:
+			return oneButtonOn;
+		case OSD:
+			return osdOn;
+		case LOCATE:
+			return locate;
+		case PROTUNE:
+			return protuneOn;
+		case BATTERY_LEVEL:
+			return batteryLevel;
+		case SD_CARD:
+			return sdCard;
+		case AUTO_POWER_OFF:
+			return autoPowerOff;
+		case BEEP_VOLUME:
+			return beepVolume;
+		case LEDS:
+			return leds;
+		default:
+			return spotMeter;
+		}
+	}
+
+	public void initialiseFromBytes(UnsignedByteView statusBytes, UnsignedByteView videoModeBytes, UnsignedByteView videoFrameRateBytes, UnsignedByteView burstRateBytes) 
+	{
+		int statusBits1 = statusBytes.get(StatusBytes.STATUS_BITS_1);
 		{
 			// Bit1 1=on 0=off
 			previewOn = (statusBits1 & 0x01) != 0;
@@ -143,7 +287,7 @@ public class GoProCameraStatus {
 			locate = (statusBits1 & 0x40) != 0;
 		}
 
-		int statusBits2 = statusBytes[StatusBytes.STATUS_BITS_2];
+		int statusBits2 = statusBytes.get(StatusBytes.STATUS_BITS_2);
 		{
 			// Bit1 1=on 0=off
 			burstRecording = (statusBits2 & 0x01) != 0;
@@ -153,7 +297,7 @@ public class GoProCameraStatus {
 		}
 
 		// Camera Mode
-		switch (statusBytes[StatusBytes.CAMERA_MODE]) 
+		switch (statusBytes.get(StatusBytes.CAMERA_MODE)) 
 		{
 		case 0:
 			cameraMode = CameraMode.Video;
@@ -178,7 +322,7 @@ public class GoProCameraStatus {
 		}
 
 		// Field of View Mode for video
-		switch (statusBytes[StatusBytes.FIELD_OF_VIEW]) 
+		switch (statusBytes.get(StatusBytes.FIELD_OF_VIEW)) 
 		{
 		case 0:
 			videoFOV = FieldOfView.Wide;
@@ -191,7 +335,7 @@ public class GoProCameraStatus {
 		}
 
 		// Photo Mode & FOV
-		switch (statusBytes[StatusBytes.PHOTO_MODE]) 
+		switch (statusBytes.get(StatusBytes.PHOTO_MODE)) 
 		{
 		case 0:
 			photoMode = PhotoMode.PhotoMode_11mpWide;
@@ -216,7 +360,7 @@ public class GoProCameraStatus {
 		}
 
 		// Timelapse Interval
-		switch (statusBytes[StatusBytes.TIMELAPSE_INTERVAL]) 
+		switch (statusBytes.get(StatusBytes.TIMELAPSE_INTERVAL)) 
 		{
 		case 0:
 			timelapseInterval = 0.5f;
@@ -233,6 +377,9 @@ public class GoProCameraStatus {
 		case 10:
 			timelapseInterval = 10;
 			break;
+		case 20:
+			timelapseInterval = 20;
+			break;
 		case 30:
 			timelapseInterval = 30;
 			break;
@@ -241,43 +388,43 @@ public class GoProCameraStatus {
 		}
 
 		// Photo Count
-		int photoCountHiByte = statusBytes[StatusBytes.PHOTOS_COUNT_HI];
-		int photoCountLoByte = statusBytes[StatusBytes.PHOTOS_COUNT_LO];
+		int photoCountHiByte = statusBytes.get(StatusBytes.PHOTOS_COUNT_HI);
+		int photoCountLoByte = statusBytes.get(StatusBytes.PHOTOS_COUNT_LO);
 		photoCount = (photoCountLoByte | (photoCountHiByte << 8));
 
 		// Photos Available
-		int photosAvailableHiByte = statusBytes[StatusBytes.PHOTOS_AVAILABLE_HI];
-		int photosAvailableLoByte = statusBytes[StatusBytes.PHOTOS_AVAILABLE_LO];
+		int photosAvailableHiByte = statusBytes.get(StatusBytes.PHOTOS_AVAILABLE_HI);
+		int photosAvailableLoByte = statusBytes.get(StatusBytes.PHOTOS_AVAILABLE_LO);
 		photosAvailable = (photosAvailableLoByte | (photosAvailableHiByte << 8));
 
 		// No SD Card, photoCountAvailableHiByte == 255
 		sdCard = (photosAvailableHiByte != 255);
 
 		// Video Count
-		int videoCountHiByte = statusBytes[StatusBytes.VIDEO_COUNT_MINS_HI];
-		int videoCountLoByte = statusBytes[StatusBytes.VIDEO_COUNT_MINS_LO];
+		int videoCountHiByte = statusBytes.get(StatusBytes.VIDEO_COUNT_MINS_HI);
+		int videoCountLoByte = statusBytes.get(StatusBytes.VIDEO_COUNT_MINS_LO);
 		videoCount = (videoCountLoByte | (videoCountHiByte << 8));
 
 		// Video Minutes Available
-		int videoMinutesAvailableHiByte = statusBytes[StatusBytes.VIDEO_REMAINING_MINS_HI];
-		int videoMinutesAvailableLoByte = statusBytes[StatusBytes.VIDEO_REMAINING_MINS_LO];
+		int videoMinutesAvailableHiByte = statusBytes.get(StatusBytes.VIDEO_REMAINING_MINS_HI);
+		int videoMinutesAvailableLoByte = statusBytes.get(StatusBytes.VIDEO_REMAINING_MINS_LO);
 		videoAvailableTime = (videoMinutesAvailableLoByte | (videoMinutesAvailableHiByte << 8)) * 60;
 		
 		// Video Recording Time
-		int videoMinutesRecording = statusBytes[StatusBytes.RECORDING_MINUTES];
-		int videoSecondsRecording = statusBytes[StatusBytes.RECORDING_SECONDS];
+		int videoMinutesRecording = statusBytes.get(StatusBytes.RECORDING_MINUTES);
+		int videoSecondsRecording = statusBytes.get(StatusBytes.RECORDING_SECONDS);
 		videoRecordingTime = (videoMinutesRecording * 60) + videoSecondsRecording;
 
 		// Battery %
-		batteryLevel = statusBytes[StatusBytes.BATTERY_LEVEL];
+		batteryLevel = statusBytes.get(StatusBytes.BATTERY_LEVEL);
 
 		// Video Recording
-		videoRecording = (statusBytes[StatusBytes.RECORDING] == 1);
+		videoRecording = (statusBytes.get(StatusBytes.RECORDING) == 1);
 		
 		// Video Mode - expecting 2 bytes, second byte is the video mode
-		if(videoModeBytes.length == 2)
+		if(videoModeBytes.length() == 2)
         {
-            switch(videoModeBytes[1])
+            switch(videoModeBytes.get(1))
             {
                 case 0:                                
                 	videoMode = VideoMode.VideoMode_WVGA;
@@ -315,9 +462,9 @@ public class GoProCameraStatus {
         }
 		
 		// Video Frame Rate - expecting 2 Bytes, second byte is the frame rate
-        if(videoFrameRateBytes.length == 2)
+        if(videoFrameRateBytes.length() == 2)
         {
-            switch(videoFrameRateBytes[1])
+            switch(videoFrameRateBytes.get(1))
             {
                 case 0:
                 	videoFrameRate = 12;
@@ -358,12 +505,12 @@ public class GoProCameraStatus {
         }
         
         // Burst Rate - expecting 2 Bytes, second byte is the burst rate
-        if(burstRateBytes.length == 2)
+        if(burstRateBytes.length() == 2)
         {
-            switch(burstRateBytes[1])
+            switch(burstRateBytes.get(1))
             {
             case 0:
-                burstRate = BurstRate.BurstRate_30_1s;
+                burstRate = BurstRate.BurstRate_3_1s;
                 break;               
             case 1:
             	burstRate = BurstRate.BurstRate_5_1s;
@@ -386,7 +533,7 @@ public class GoProCameraStatus {
         }
         
         // Auto Power Off
-       	switch(statusBytes[StatusBytes.AUTO_POWEROFF])
+       	switch(statusBytes.get(StatusBytes.AUTO_POWEROFF))
        	{
        	case 0:
        		autoPowerOff = AutoPowerOff.AutoPowerOff_Never;
@@ -405,7 +552,7 @@ public class GoProCameraStatus {
        	}
        	
        	// Startup Mode
-       	switch(statusBytes[StatusBytes.STARTUP_MODE])
+       	switch(statusBytes.get(StatusBytes.STARTUP_MODE))
        	{
        	case 0:
        		defaultCameraMode = CameraMode.Video;
@@ -424,7 +571,7 @@ public class GoProCameraStatus {
        	}
        	
        	// Startup Mode
-      	switch(statusBytes[StatusBytes.BEEP_VOLUME])
+      	switch(statusBytes.get(StatusBytes.BEEP_VOLUME))
       	{
       	case 0:
       		beepVolume = 0;
@@ -440,7 +587,7 @@ public class GoProCameraStatus {
       	}
 
       	// LEDs
-		switch(statusBytes[StatusBytes.LEDS])
+		switch(statusBytes.get(StatusBytes.LEDS))
        	{
        	case 0:
        		leds = LEDs.LEDs_Off;
@@ -456,6 +603,6 @@ public class GoProCameraStatus {
        	}
 		
 		// Spot Metering
-		spotMeter = (statusBytes[StatusBytes.SPOT_METER] == 1);
+		spotMeter = (statusBytes.get(StatusBytes.SPOT_METER) == 1);
 	}
 }
@@ -24,12 +24,13 @@
 
 package com.droidscript.plugins;
 
-import java.io.IOException;
-import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.droidscript.plugins.LatencyTracker.RequestClass;
+
 import android.util.Log;
 
 public class GoProCameraVersion 
@@ -51,15 +52,13 @@ public class GoProCameraVersion
 	public String wifiMac;
 	public String cameraType;
 	
-	private static int TIMEOUT = 10000;
-
-	public GoProCameraVersion(String ip, String port)
+	public GoProCameraVersion(String ip, String port, LatencyTracker latency)
 	{
-		JSONObject version = fetchUsingMethod1(ip, port);
+		JSONObject version = fetch("http://" + ip + ":" + port + "/videos/MISC/version.txt", latency);
 		
 		if(version == null)
 		{
-			version = fetchUsingMethod2(ip, port);
+			version = fetch("http://" + ip + ":" + port + "/MISC/version.txt", latency);
 		}
 		
 		if(version != null)
@@ -84,58 +83,37 @@ public class GoProCameraVersion
 		}
 	}
 	
-	// Try "http://10.5.5.9:8080/videos/MISC/version.txt"
-	private JSONObject fetchUsingMethod1(String ip, String port)
+	// Blocking call
+	// Read version.txt from the url over a pooled connection, within the camera's info
+	// budget, e.g. "http://10.5.5.9:8080/videos/MISC/version.txt". null if it can't be read.
+	private static JSONObject fetch(String url, LatencyTracker latency)
 	{
 		JSONObject version = null;
-		HttpURLConnection httpConnection = null;
+		long start = System.currentTimeMillis();
 		
 		try 
 		{
-			httpConnection = HttpUtils.openHttpConnection("http://" + ip + ":" + port + "/videos/MISC/version.txt", TIMEOUT);
+			HttpResponse response = HttpUtils.requestSuccessful(url, latency.getBudget(RequestClass.INFO));
+			latency.recordRoundTrip(RequestClass.INFO, System.currentTimeMillis() - start);
 			
-			version = HttpUtils.responseToJSON(httpConnection);
+			try
+			{
+				version = new JSONObject(response.getBodyAsString());
+			}
+			finally
+			{
+				response.release();
+			}
 		} 
-		catch (IOException e) 
+		catch (SocketTimeoutException e) 
 		{
-			Log.e(TAG, "fetchUsingMethod1", e);
+			latency.recordTimeout(RequestClass.INFO);
+			Log.e(TAG, "fetch " + url, e);
 		}
-		finally
-        {
-        	
-        	if(httpConnection != null)
-        	{
-        		httpConnection.disconnect();
-        	}
-        }
-		
-		return version;
-	}
-	
-	// Try "http://10.5.5.9:8080/MISC/version.txt"
-	private JSONObject fetchUsingMethod2(String ip, String port)
-	{
-		JSONObject version = null;
-		HttpURLConnection httpConnection = null;
-		
-		try 
-		{
-			httpConnection = HttpUtils.openHttpConnection("http://" + ip + ":" + port + "/MISC/version.txt", TIMEOUT);
-			
-			version = HttpUtils.responseToJSON(httpConnection);
-		} 
-		catch (IOException e) 
+		catch (Exception e) 
 		{
-			Log.e(TAG, "fetchUsingMethod2", e);
+			Log.e(TAG, "fetch " + url, e);
 		}
-		finally
-        {
-        	
-        	if(httpConnection != null)
-        	{
-        		httpConnection.disconnect();
-        	}
-        }
 		
 		return version;
 	}
@@ -0,0 +1,99 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview Ready to send requests for every camera command, built once the password is known.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Map;
+
+// Holds the raw HTTP request bytes for each (command, parameter) pair, so sending a
+// command is a lookup and a write. Filled in by the camera while it connects and not
+// modified once it has been handed over, the request arrays must not be changed by callers.
+public class GoProCommandTable
+{
+	private static char[] HEX_DIGITS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+	private String m_host;
+	private String m_password;
+
+	// Indexed by parameter value, null for values the command doesn't take
+	private Map<String, byte[][]> m_requests = new HashMap<String, byte[][]>();
+
+	public GoProCommandTable(String host, String password)
+	{
+		m_host = host;
+		m_password = password;
+	}
+
+	public String getHost()
+	{
+		return m_host;
+	}
+
+	// Precompile the requests for the command with each of the parameter values
+	public void add(String command, int... params) throws UnsupportedEncodingException
+	{
+		int max = 0;
+		for(int param : params)
+		{
+			max = Math.max(max, param);
+		}
+
+		byte[][] requests = new byte[max + 1][];
+		for(int param : params)
+		{
+			requests[param] = makeRequest(m_host, command, m_password, param);
+		}
+
+		m_requests.put(command, requests);
+	}
+
+	// The request for the command and parameter, or null if it hasn't been precompiled
+	public byte[] get(String command, int param)
+	{
+		byte[][] requests = m_requests.get(command);
+
+		if(requests == null || param < 0 || param >= requests.length)
+		{
+			return null;
+		}
+
+		return requests[param];
+	}
+
+	// Build a command request, e.g. GET /camera/CM?t=password&p=%01. A negative param
+	// leaves out the p argument.
+	public static byte[] makeRequest(String host, String command, String password, int param) throws UnsupportedEncodingException
+	{
+		String file = command + "?t=" + password;
+
+		if(param >= 0)
+		{
+			file += "&p=%" + HEX_DIGITS[(param >> 4) & 0xF] + HEX_DIGITS[param & 0xF];
+		}
+
+		return HttpUtils.makeGetRequest(host, file);
+	}
+}
@@ -28,6 +28,13 @@ import android.os.*;
 import android.content.*;
 import android.util.Log;
 import java.lang.reflect.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.json.JSONObject;
 
 public class GoProController implements GoProCameraListener
@@ -38,12 +45,44 @@ public class GoProController implements GoProCameraListener
 	private Method m_callscript;
 	private Object m_parent;
 	private GoProCamera m_camera;
+	
+	// Named cameras driven from the one plugin object, their events go to m_onFleetEventCallback
+	private GoProFleet m_fleet = new GoProFleet(new GoProFleet.ListenerFactory() {
+		@Override
+		public GoProCameraListener create(String name)
+		{
+			return new FleetListener(name);
+		}
+	});
+
+	// The discovery scan in progress, cancelled if another is started
+	private GoProFuture<List<GoProDiscovery.Hit>> m_discovery;
 
 	// Script callbacks.
 	private String m_onConnectCallback;
 	private String m_onErrorCallback;
 	private String m_onReadyCallback;
+	private String m_onHealthCallback;
+	private String m_onReconnectCallback;
+	private volatile String m_onFleetEventCallback;
 	private String m_onStatusCallback;
+	private boolean m_statusChangesOnly = false; // Only call m_onStatusCallback if the status has changed
+	private GoProCameraStatus m_lastStatusSent; // The status last passed to m_onStatusCallback
+	private String m_onStatusChangeCallback;
+	private Set<GoProCameraStatus.Field> m_statusChangeFields; // null for every field
+	
+	// The JSON for the last status serialized, reused while the camera returns the same status
+	private GoProCameraStatus m_jsonStatus;
+	private String m_jsonStatusString;
+	
+	// Options applied to each camera on Connect
+	private boolean m_hedging = false;
+	private boolean m_autoReconnect = false;
+	private int m_statusTTL = -1; // -1 leaves the camera's default
+	private long[] m_pollIntervals; // Fast, normal and idle, null leaves the camera's defaults
+	
+	// Sessions saved between connections, so a reconnect can skip the handshake
+	private GoProSessionCache m_sessionCache;
 
 	// Construct plugin.
 	public GoProController()
@@ -60,6 +99,8 @@ public class GoProController implements GoProCameraListener
 
 			//Save reference to parent (DroidScript).
 			m_parent = parent;
+			
+			m_sessionCache = new GoProSessionCache(ctx);
 
 			//Use reflection to get 'CallScript' method
 			Log.d( TAG, "Getting CallScript method");
@@ -108,6 +149,9 @@ public class GoProController implements GoProCameraListener
 				{
 					m_camera.disconnect();
 				}
+				
+				// The named cameras are finished with too
+				m_fleet.close();
 			}
 			else if( cmd.equals("SetOnConnect") )
 			{
@@ -121,6 +165,65 @@ public class GoProController implements GoProCameraListener
 			{
 				m_onReadyCallback = b.getString("p1");
 			}
+			else if ( cmd.equals("SetOnHealthChange") )
+			{
+				m_onHealthCallback = b.getString("p1");
+			}
+			else if ( cmd.equals("AddCamera") )
+			{
+				AddCamera(b);
+			}
+			else if ( cmd.equals("RemoveCamera") )
+			{
+				return m_fleet.remove(b.getString("p1")) ? "true" : "false";
+			}
+			else if ( cmd.equals("SetGroup") )
+			{
+				SetGroup(b);
+			}
+			else if ( cmd.equals("FleetExecute") )
+			{
+				return FleetExecute(b);
+			}
+			else if ( cmd.equals("SyncShutter") )
+			{
+				return SyncShutter(b);
+			}
+			else if ( cmd.equals("Discover") )
+			{
+				return Discover(b);
+			}
+			else if ( cmd.equals("StopDiscovery") )
+			{
+				StopDiscovery();
+			}
+			else if ( cmd.equals("GetFleet") )
+			{
+				JSONObject jsonFleet = GoProJSON.getJSONFleet(m_fleet.resolve(GoProFleet.ALL));
+				
+				return (jsonFleet != null) ? toJSONString(jsonFleet) : "";
+			}
+			else if ( cmd.equals("SetOnFleetEvent") )
+			{
+				m_onFleetEventCallback = b.getString("p1");
+			}
+			else if ( cmd.equals("SetOnReconnect") )
+			{
+				m_onReconnectCallback = b.getString("p1");
+			}
+			else if ( cmd.equals("SetAutoReconnect") )
+			{
+				m_autoReconnect = "true".equals(b.getString("p1"));
+				
+				for(GoProCamera camera : getCameras())
+				{
+					camera.setAutoReconnect(m_autoReconnect);
+				}
+			}
+			else if ( cmd.equals("GetHealth") )
+			{
+				return (m_camera != null) ? m_camera.getHealth().getLabel() : "";
+			}
 			else if ( cmd.equals("StartShutter") )
 			{
 				if(m_camera != null)
@@ -160,6 +263,10 @@ public class GoProController implements GoProCameraListener
 					m_camera.stopPreview();
 				}
 			}
+			else if ( cmd.equals("SetOnStatusChange") )
+			{
+				SetOnStatusChange(b);
+			}
 			else if ( cmd.equals("LoadStatus") )
 			{
 				LoadStatus(b);
@@ -180,7 +287,7 @@ public class GoProController implements GoProCameraListener
 			}
 			else if ( cmd.equals("SetOptions") )
 			{
-				SetOptions(b);
+				return SetOptions(b);
 			}
 			else if ( cmd.equals("GetModel") )
 			{
@@ -215,6 +322,61 @@ public class GoProController implements GoProCameraListener
 			{
 				return (m_camera != null && m_camera.isReady()) ? "true" : "false";
 			}
+			else if ( cmd.equals("GetStatus") )
+			{
+				return GetStatus(b);
+			}
+			else if ( cmd.equals("SetStatusTTL") )
+			{
+				m_statusTTL = Integer.parseInt(b.getString("p1"));
+				
+				for(GoProCamera camera : getCameras())
+				{
+					camera.setStatusTTL(m_statusTTL);
+				}
+			}
+			else if ( cmd.equals("SetPollIntervals") )
+			{
+				m_pollIntervals = new long[] { Long.parseLong(b.getString("p1")), Long.parseLong(b.getString("p2")), Long.parseLong(b.getString("p3")) };
+				
+				for(GoProCamera camera : getCameras())
+				{
+					camera.setPollIntervals(m_pollIntervals[0], m_pollIntervals[1], m_pollIntervals[2]);
+				}
+			}
+			else if ( cmd.equals("SetMaxConnections") )
+			{
+				HttpUtils.getConnectionPool().setMaxConnectionsPerHost(Integer.parseInt(b.getString("p1")));
+			}
+			else if ( cmd.equals("SetConnectionIdleTimeout") )
+			{
+				HttpUtils.getConnectionPool().setIdleTimeout(Long.parseLong(b.getString("p1")));
+			}
+			else if ( cmd.equals("GetPollInterval") )
+			{
+				return (m_camera != null) ? Long.toString(m_camera.getPollInterval()) : "";
+			}
+			else if ( cmd.equals("GetConnectTimes") )
+			{
+				JSONObject jsonTimes = (m_camera != null) ? GoProJSON.getJSONConnectTimes(m_camera) : null;
+				
+				return (jsonTimes != null) ? toJSONString(jsonTimes) : "";
+			}
+			else if ( cmd.equals("GetLaneStats") )
+			{
+				JSONObject jsonStats = (m_camera != null) ? GoProJSON.getJSONLaneStats(m_camera) : null;
+				
+				return (jsonStats != null) ? toJSONString(jsonStats) : "";
+			}
+			else if ( cmd.equals("SetHedging") )
+			{
+				m_hedging = "true".equals(b.getString("p1"));
+				
+				for(GoProCamera camera : getCameras())
+				{
+					camera.setHedgingEnabled(m_hedging);
+				}
+			}
 		} 
 		catch (Exception e) 
 		{
@@ -232,7 +394,14 @@ public class GoProController implements GoProCameraListener
 	
 	private void Connect(Bundle b)
 	{
+		// Free the last camera's polls and threads before making a new one
+		if(m_camera != null)
+		{
+			m_camera.close();
+		}
+		
 		m_camera = new GoProCamera(this);
+		configure(m_camera);
 		
 		// Extract the ip address
 		String ipAddress = b.getString("p1");
@@ -242,11 +411,373 @@ public class GoProController implements GoProCameraListener
 		m_camera.connect(ipAddress);
 	}
 	
+	// Apply the options set from the script to a new camera
+	private void configure(GoProCamera camera)
+	{
+		camera.setHedgingEnabled(m_hedging);
+		camera.setAutoReconnect(m_autoReconnect);
+		camera.setSessionCache(m_sessionCache);
+		if(m_statusTTL >= 0)
+		{
+			camera.setStatusTTL(m_statusTTL);
+		}
+		if(m_pollIntervals != null)
+		{
+			camera.setPollIntervals(m_pollIntervals[0], m_pollIntervals[1], m_pollIntervals[2]);
+		}
+	}
+	
+	// The camera from Connect, if any, and every camera in the fleet
+	private List<GoProCamera> getCameras()
+	{
+		List<GoProCamera> cameras = new ArrayList<GoProCamera>(m_fleet.resolve(GoProFleet.ALL).values());
+		
+		if(m_camera != null)
+		{
+			cameras.add(0, m_camera);
+		}
+		
+		return cameras;
+	}
+	
+	// p1 is the name for the camera, p2 its ip address. A camera already with the name is replaced.
+	private void AddCamera(Bundle b)
+	{
+		String name = b.getString("p1");
+		String ipAddress = b.getString("p2");
+		
+		Log.d( TAG, "AddCamera( " + name + ", " + ipAddress + " )");
+		
+		GoProCamera camera = m_fleet.add(name);
+		configure(camera);
+		camera.connect(ipAddress);
+	}
+	
+	// p1 is the group name, p2 a comma separated list of camera names
+	private void SetGroup(Bundle b)
+	{
+		String group = b.getString("p1");
+		List<String> names = new ArrayList<String>();
+		
+		for(String name : b.getString("p2").split(","))
+		{
+			if(name.trim().length() > 0)
+			{
+				names.add(name.trim());
+			}
+		}
+		
+		Log.d( TAG, "SetGroup( " + group + ", " + names + " )");
+		
+		m_fleet.setGroup(group, names);
+	}
+	
+	// Send a command to every camera p1 addresses: a camera name, a group name or "all", or
+	// several separated by commas. p2 is the command, p3 its argument and p4 a callback that
+	// is passed each camera's name and result as soon as that camera has finished. Each camera
+	// is sent the command straight away on its own lanes, so a slow camera doesn't hold up
+	// the others. Returns the number of cameras addressed.
+	private String FleetExecute(Bundle b)
+	{
+		String target = b.getString("p1");
+		String command = b.getString("p2");
+		String argument = b.getString("p3");
+		final String callback = b.getString("p4");
+		
+		Log.d( TAG, "FleetExecute( " + target + ", " + command + " )");
+		
+		Map<String, GoProCamera> cameras = m_fleet.resolve(target);
+		
+		for(Map.Entry<String, GoProCamera> entry : cameras.entrySet())
+		{
+			final String name = entry.getKey();
+			GoProFuture<?> future;
+			
+			try
+			{
+				future = FleetCommand(entry.getValue(), command, argument);
+			}
+			catch(Exception e)
+			{
+				Log.e( TAG, "FleetExecute failed for " + name, e);
+				future = GoProFuture.failed(e);
+			}
+			
+			if(callback != null && callback.length() > 0)
+			{
+				future.addListener(new GoProFuture.Listener<Object>() {
+					@Override
+					public void onComplete(GoProResult<Object> result)
+					{
+						Bundle cb = new Bundle();
+						cb.putString("cmd", callback);
+						cb.putString("p1", name);
+						cb.putString("p2", "json:"+toJSONString(GoProJSON.getJSONResult(result)));
+						CallScript(cb);
+					}
+				});
+			}
+		}
+		
+		return Integer.toString(cameras.size());
+	}
+	
+	// Look for cameras at every address in the range p1, e.g. "192.168.1.0/24" or
+	// "10.5.5.2-10.5.5.20". p2 is called with the name, model and ip address of each camera
+	// as it answers, p3 with all of them once the scan is done. p4 is how many addresses to
+	// probe at once and p5 how long to wait for each in ms, either can be empty for the
+	// default. Returns the number of addresses to probe, 0 if the range can't be read.
+	private String Discover(Bundle b)
+	{
+		String range = b.getString("p1");
+		final String onFoundCallback = b.getString("p2");
+		final String onDoneCallback = b.getString("p3");
+		String parallelism = b.getString("p4");
+		String timeout = b.getString("p5");
+		
+		Log.d( TAG, "Discover( " + range + ", " + parallelism + ", " + timeout + " )");
+		
+		GoProFuture<List<GoProDiscovery.Hit>> discovery;
+		int count;
+		try
+		{
+			count = GoProDiscovery.getAddressCount(range);
+			discovery = GoProDiscovery.scan(range,
+				(parallelism != null && parallelism.length() > 0) ? Integer.parseInt(parallelism) : 0,
+				(timeout != null && timeout.length() > 0) ? Integer.parseInt(timeout) : 0,
+				new GoProDiscovery.Listener() {
+					@Override
+					public void onFound(GoProDiscovery.Hit hit)
+					{
+						if(onFoundCallback != null && onFoundCallback.length() > 0)
+						{
+							Bundle cb = new Bundle();
+							cb.putString("cmd", onFoundCallback);
+							cb.putString("p1", hit.name);
+							cb.putString("p2", (hit.cameraInfo != null) ? hit.cameraInfo.modelName : "Unknown");
+							cb.putString("p3", hit.ipAddress);
+							CallScript(cb);
+						}
+					}
+				});
+		}
+		catch(IllegalArgumentException e)
+		{
+			Log.e( TAG, "Discover failed", e);
+			return "0";
+		}
+		
+		StopDiscovery();
+		m_discovery = discovery;
+		
+		discovery.addListener(new GoProFuture.Listener<List<GoProDiscovery.Hit>>() {
+			@Override
+			public void onComplete(GoProResult<List<GoProDiscovery.Hit>> result)
+			{
+				if(result.isSuccess() && onDoneCallback != null && onDoneCallback.length() > 0)
+				{
+					JSONObject jsonHits = GoProJSON.getJSONDiscovery(result.getValue());
+					
+					if(jsonHits != null)
+					{
+						Bundle cb = new Bundle();
+						cb.putString("cmd", onDoneCallback);
+						cb.putString("p1", "json:"+toJSONString(jsonHits));
+						CallScript(cb);
+					}
+				}
+			}
+		});
+		
+		return Integer.toString(count);
+	}
+	
+	// Stop the discovery scan in progress, its done callback isn't called
+	private void StopDiscovery()
+	{
+		GoProFuture<List<GoProDiscovery.Hit>> discovery = m_discovery;
+		
+		if(discovery != null)
+		{
+			discovery.cancel(false);
+			m_discovery = null;
+		}
+	}
+	
+	// Start (p2 "true") or stop the shutter on every camera p1 addresses at the same moment.
+	// p3 is a callback passed each camera's result and the skew between them. Returns the
+	// number of cameras addressed.
+	private String SyncShutter(Bundle b)
+	{
+		String target = b.getString("p1");
+		boolean on = "true".equals(b.getString("p2"));
+		final String callback = b.getString("p3");
+		
+		Log.d( TAG, "SyncShutter( " + target + ", " + on + " )");
+		
+		Map<String, GoProCamera> cameras = m_fleet.resolve(target);
+		GoProFuture<GoProSyncShutter.Result> future = GoProSyncShutter.trigger(cameras, on);
+		
+		if(callback != null && callback.length() > 0)
+		{
+			future.addListener(new GoProFuture.Listener<GoProSyncShutter.Result>() {
+				@Override
+				public void onComplete(GoProResult<GoProSyncShutter.Result> result)
+				{
+					JSONObject jsonResult = GoProJSON.getJSONSyncShutter(result.getValue());
+					
+					if(jsonResult != null)
+					{
+						Log.d( TAG, "Calling " + callback + " with skew " + result.getValue().skew + "ms");
+						
+						Bundle cb = new Bundle();
+						cb.putString("cmd", callback);
+						cb.putString("p1", "json:"+toJSONString(jsonResult));
+						CallScript(cb);
+					}
+				}
+			});
+		}
+		
+		return Integer.toString(cameras.size());
+	}
+	
+	// Start one of the fleet commands on a camera
+	private GoProFuture<?> FleetCommand(GoProCamera camera, String command, String argument) throws Exception
+	{
+		if(command.equals("StartShutter"))
+		{
+			return camera.startShutter();
+		}
+		else if(command.equals("StopShutter"))
+		{
+			return camera.stopShutter();
+		}
+		else if(command.equals("PowerOn"))
+		{
+			return camera.powerOn();
+		}
+		else if(command.equals("PowerOff"))
+		{
+			return camera.powerOff();
+		}
+		else if(command.equals("StartPreview"))
+		{
+			return camera.startPreview();
+		}
+		else if(command.equals("StopPreview"))
+		{
+			return camera.stopPreview();
+		}
+		else if(command.equals("LoadStatus"))
+		{
+			return camera.getCameraStatus();
+		}
+		else if(command.equals("SetOptions"))
+		{
+			List<GoProFuture<Void>> sent = new ArrayList<GoProFuture<Void>>();
+			GoProJSON.setCameraOptionsFromJSON(camera, new JSONObject(argument), sent);
+			
+			return GoProFuture.allOf(sent);
+		}
+		
+		return GoProFuture.failed(new IllegalArgumentException("Unknown fleet command: " + command));
+	}
+	
+	// Each fleet camera's events go to the fleet event callback with the camera's name,
+	// the event and any data
+	private class FleetListener implements GoProCameraListener
+	{
+		private String m_name;
+		
+		public FleetListener(String name)
+		{
+			m_name = name;
+		}
+		
+		private void CallFleetEvent(String event, String data)
+		{
+			String callback = m_onFleetEventCallback;
+			
+			if(callback != null)
+			{
+				Bundle b = new Bundle();
+				b.putString("cmd", callback);
+				b.putString("p1", m_name);
+				b.putString("p2", event);
+				if(data != null)
+				{
+					b.putString("p3", data);
+				}
+				CallScript(b);
+			}
+		}
+		
+		@Override
+		public void onConnected()
+		{
+			CallFleetEvent("Connected", null);
+		}
+		
+		@Override
+		public void onError(String error)
+		{
+			CallFleetEvent("Error", error);
+		}
+		
+		@Override
+		public void onReady()
+		{
+			CallFleetEvent("Ready", null);
+		}
+		
+		@Override
+		public void onCameraStatus(GoProCameraStatus status)
+		{
+			String jsonStatus = getJSONStatusString(status);
+			
+			if(jsonStatus != null)
+			{
+				CallFleetEvent("Status", "json:"+jsonStatus);
+			}
+		}
+		
+		@Override
+		public void onCameraStatusChanged(List<GoProCameraStatus.Change> changes)
+		{
+			// Only once the script has subscribed with SetOnStatusChange, filtered the same way
+			if(m_onStatusChangeCallback == null)
+			{
+				return;
+			}
+			
+			JSONObject jsonChanges = GoProJSON.getJSONStatusChanges(filterChanges(changes));
+			
+			if(jsonChanges != null && jsonChanges.length() > 0)
+			{
+				CallFleetEvent("StatusChange", "json:"+toJSONString(jsonChanges));
+			}
+		}
+		
+		@Override
+		public void onHealthChanged(FailureDetector.Health health)
+		{
+			CallFleetEvent("Health", health.getLabel());
+		}
+		
+		@Override
+		public void onReconnected(long downtime)
+		{
+			CallFleetEvent("Reconnected", Long.toString(downtime));
+		}
+	}
+	
 	private void LoadStatus(Bundle b)
 	{
 		Log.d( TAG, "LoadStatus( )");
 		
 		m_onStatusCallback = b.getString("p1");
+		m_statusChangesOnly = "true".equals(b.getString("p2"));
 		
 		if(m_camera != null)
 		{
@@ -254,27 +785,136 @@ public class GoProController implements GoProCameraListener
 		}
 	}
 	
-	private void SetOptions(Bundle b)
+	// p1 is the callback, p2 a comma separated list of the JSON labels of the properties
+	// to be told about, or empty for all of them
+	private void SetOnStatusChange(Bundle b)
+	{
+		String callback = b.getString("p1");
+		String labels = b.getString("p2");
+		
+		Log.d( TAG, "SetOnStatusChange( " + callback + ", " + labels + " )");
+		
+		Set<GoProCameraStatus.Field> fields = null;
+		
+		if(labels != null && labels.trim().length() > 0)
+		{
+			fields = new HashSet<GoProCameraStatus.Field>();
+			
+			for(String label : labels.split(","))
+			{
+				GoProCameraStatus.Field field = GoProJSON.getField(label.trim());
+				
+				if(field != null)
+				{
+					fields.add(field);
+				}
+				else
+				{
+					Log.e( TAG, "SetOnStatusChange: unknown property " + label);
+				}
+			}
+		}
+		
+		m_statusChangeFields = fields;
+		m_onStatusChangeCallback = (callback != null && callback.length() > 0) ? callback : null;
+	}
+	
+	// Returns the status as a JSON string, or an empty string if it isn't available. The
+	// camera is only asked for it if the cached status is older than p1 milliseconds,
+	// or than the status TTL if p1 isn't given.
+	private String GetStatus(Bundle b)
 	{
 		if(m_camera == null)
 		{
-			return;
+			return "";
+		}
+		
+		String maxAgeString = b.getString("p1");
+		long maxAge = m_camera.getStatusTTL();
+		
+		if(maxAgeString != null && maxAgeString.length() > 0 && !maxAgeString.equals("undefined"))
+		{
+			maxAge = Long.parseLong(maxAgeString);
+		}
+		
+		Log.d( TAG, "GetStatus( " + maxAge + " )");
+		
+		GoProCameraStatus status = null;
+		try
+		{
+			// Don't hold up the script if the camera has stopped answering
+			status = m_camera.getStatus(maxAge).get(m_camera.getStatusTimeout(), TimeUnit.MILLISECONDS).getValue();
+		}
+		catch(TimeoutException e)
+		{
+			Log.d( TAG, "GetStatus timed out, returning the last status read");
+			status = m_camera.getShadowStatus();
+		}
+		catch(Exception e)
+		{
+			Log.e( TAG, "GetStatus failed", e);
+		}
+		
+		String jsonStatus = (status != null) ? getJSONStatusString(status) : null;
+		
+		return (jsonStatus != null) ? jsonStatus : "";
+	}
+	
+	// The status as a JSON string, null if it can't be serialized. The camera hands back the
+	// same status object while its status bytes are unchanged, so the JSON is only rebuilt
+	// when the status is a different object.
+	private synchronized String getJSONStatusString(GoProCameraStatus status)
+	{
+		if(status != m_jsonStatus)
+		{
+			JSONObject jsonStatus = GoProJSON.getJSONCameraStatus(status);
+			
+			m_jsonStatusString = (jsonStatus != null) ? toJSONString(jsonStatus) : null;
+			m_jsonStatus = status;
+		}
+		
+		return m_jsonStatusString;
+	}
+	
+	// Returns the number of options skipped because the camera already had them. If p2
+	// names a callback, it is called with the result once every option has been sent.
+	private String SetOptions(Bundle b)
+	{
+		if(m_camera == null)
+		{
+			return "0";
 		}	
 				
 		String optionsString = b.getString("p1");
+		final String callback = b.getString("p2");
 		
 		Log.d( TAG, "SetOptions( " + optionsString + " )");
 	
+		int skipped = 0;
 		try 
 		{
 			JSONObject options = new JSONObject(optionsString);
+			List<GoProFuture<Void>> sent = new ArrayList<GoProFuture<Void>>();
+			
+			skipped = GoProJSON.setCameraOptionsFromJSON(m_camera, options, sent);
 			
-			GoProJSON.setCameraOptionsFromJSON(m_camera, options);
+			if(callback != null && callback.length() > 0 && !callback.equals("undefined"))
+			{
+				GoProFuture.allOf(sent).addListener(new GoProFuture.Listener<Void>() {
+					@Override
+					public void onComplete(GoProResult<Void> result)
+					{
+						CallScriptWithResult(callback, result);
+					}
+				});
+			}
 		} 
 		catch (Exception e) 
 		{
 		   Log.e( TAG, "SetOptions failed", e);
 		}
+		
+		return Integer.toString(skipped);
 	}
 
 	// GoProCameraListener override
@@ -320,31 +960,130 @@ public class GoProController implements GoProCameraListener
 		}
 	}
 
+	// GoProCameraListener override
+	@Override
+	public void onHealthChanged(FailureDetector.Health health) 
+	{
+		if(m_onHealthCallback != null)
+		{
+			Log.d( TAG, "Calling OnHealthChange Callback");
+			
+			Bundle b = new Bundle();
+			b.putString("cmd", m_onHealthCallback);
+			b.putString("p1", health.getLabel());
+			CallScript(b);
+		}
+	}
+
+	// GoProCameraListener override
+	@Override
+	public void onReconnected(long downtime) 
+	{
+		if(m_onReconnectCallback != null)
+		{
+			Log.d( TAG, "Calling OnReconnect Callback");
+			
+			Bundle b = new Bundle();
+			b.putString("cmd", m_onReconnectCallback);
+			b.putString("p1", Long.toString(downtime));
+			CallScript(b);
+		}
+	}
+
 	// GoProCameraListener override
 	@Override
 	public void onCameraStatus(GoProCameraStatus status) 
 	{
 		if(m_onStatusCallback != null)
 		{
+			if(m_statusChangesOnly && status == m_lastStatusSent)
+			{
+				return; // The camera sent the same status bytes, the script already has it
+			}
+			
 			Log.d( TAG, "Calling OnCameraStatus Callback");
 			
 			Bundle b = new Bundle();
 			b.putString("cmd", m_onStatusCallback);
 			
-			JSONObject jsonStatus = GoProJSON.getJSONCameraStatus(status);
+			String jsonStatus = getJSONStatusString(status);
 
 			if(jsonStatus != null)
 			{
-				String jsonString = jsonStatus.toString();
-				
-				// JSONObject.toString() will escape '/' to '\/' which messes up the burst rate '10\/2s'
-				// Get around this by replacing '\/' with '/' before sending
-				jsonString = jsonString.replace("\\/", "/");
-				b.putString("p1", "json:"+jsonString);				
+				m_lastStatusSent = status;
+				b.putString("p1", "json:"+jsonStatus);				
 				CallScript(b);
 			}	
 		}
 	}
+	
+	// GoProCameraListener override
+	@Override
+	public void onCameraStatusChanged(List<GoProCameraStatus.Change> changes) 
+	{
+		String callback = m_onStatusChangeCallback;
+		
+		if(callback == null)
+		{
+			return;
+		}
+		
+		// Only send the script what it asked for, and nothing at all if none of it changed
+		changes = filterChanges(changes);
+		
+		if(changes.isEmpty())
+		{
+			return;
+		}
+		
+		JSONObject jsonChanges = GoProJSON.getJSONStatusChanges(changes);
+		
+		if(jsonChanges != null)
+		{
+			Log.d( TAG, "Calling OnStatusChange Callback");
+			
+			Bundle b = new Bundle();
+			b.putString("cmd", callback);
+			b.putString("p1", "json:"+toJSONString(jsonChanges));
+			CallScript(b);
+		}
+	}
+	
+	// The changes to properties the script subscribed to with SetOnStatusChange. One button
+	// is left out like it is from the full status.
+	private List<GoProCameraStatus.Change> filterChanges(List<GoProCameraStatus.Change> changes)
+	{
+		Set<GoProCameraStatus.Field> fields = m_statusChangeFields;
+		List<GoProCameraStatus.Change> wanted = new ArrayList<GoProCameraStatus.Change>();
+		
+		for(GoProCameraStatus.Change change : changes)
+		{
+			if((fields != null) ? fields.contains(change.field) : change.field != GoProCameraStatus.Field.ONE_BUTTON)
+			{
+				wanted.add(change);
+			}
+		}
+		
+		return wanted;
+	}
+	
+	//Call a script function with the result of an operation.
+	private void CallScriptWithResult( String callback, GoProResult<?> result )
+	{
+		Log.d( TAG, "Calling " + callback + " with " + result);
+		
+		Bundle b = new Bundle();
+		b.putString("cmd", callback);
+		b.putString("p1", "json:"+toJSONString(GoProJSON.getJSONResult(result)));
+		CallScript(b);
+	}
+	
+	private static String toJSONString(JSONObject json)
+	{
+		// JSONObject.toString() will escape '/' to '\/' which messes up the burst rate '10\/2s'
+		// Get around this by replacing '\/' with '/' before sending
+		return json.toString().replace("\\/", "/");
+	}
 } 
 
 
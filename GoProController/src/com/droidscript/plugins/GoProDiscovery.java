@@ -0,0 +1,374 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/**
+ * @fileoverview Finds GoPros by asking every address in a range for its name, many at once.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.util.Log;
+
+// A fixed number of workers share the range, each probing the next address not yet taken
+// until there are none left, so no more than that many requests are ever outstanding. An
+// address that doesn't answer costs one short timeout, not the usual request budget.
+// Cameras are reported as they answer, the future completes with them all once every
+// address has been probed, and cancelling it stops the workers after their current probe.
+public class GoProDiscovery
+{
+	private static String TAG = "GoProDiscovery";
+	
+	public static int DEFAULT_PARALLELISM = 32;
+	public static int DEFAULT_TIMEOUT = 500; // ms per address
+	public static int MAX_PARALLELISM = 64;
+	public static int MAX_ADDRESSES = 4096;
+	
+	private static String NAME = "/bacpac/cv";
+	private static String PASSWORD = "/bacpac/sd";
+	private static String CAMERA_INFO = "/camera/cv";
+	private static int HTTP_PORT = 80;
+	
+	public static class Hit
+	{
+		public String ipAddress;
+		public String name;
+		public GoProCameraInfo cameraInfo; // null if the camera didn't give its model
+	}
+	
+	public interface Listener
+	{
+		// Called on one of the workers as each camera answers, mustn't block
+		void onFound(Hit hit);
+	}
+	
+	private int m_first;
+	private int m_count;
+	private int m_timeout;
+	private Listener m_listener;
+	private long m_start = System.currentTimeMillis();
+	private AtomicInteger m_next = new AtomicInteger(0);
+	private AtomicInteger m_workers;
+	private List<Hit> m_hits = Collections.synchronizedList(new ArrayList<Hit>());
+	private GoProFuture<List<Hit>> m_future = new GoProFuture<List<Hit>>();
+	
+	private GoProDiscovery(int[] range, int parallelism, int timeout, Listener listener)
+	{
+		m_first = range[0];
+		m_count = range[1] - range[0] + 1;
+		m_timeout = (timeout > 0) ? timeout : DEFAULT_TIMEOUT;
+		m_listener = listener;
+		m_workers = new AtomicInteger(Math.min(m_count, (parallelism > 0) ? Math.min(parallelism, MAX_PARALLELISM) : DEFAULT_PARALLELISM));
+	}
+	
+	// Non-Blocking call
+	// Probe every address in the range, given as "192.168.1.0/24", "10.5.5.2-10.5.5.20" or a
+	// single address. A parallelism or timeout of 0 uses the default. Throws
+	// IllegalArgumentException if the range can't be read or is too big.
+	public static GoProFuture<List<Hit>> scan(String range, int parallelism, int timeout, Listener listener)
+	{
+		GoProDiscovery discovery = new GoProDiscovery(parseRange(range), parallelism, timeout, listener);
+		discovery.start();
+		
+		return discovery.m_future;
+	}
+	
+	// Number of addresses scan() would probe for the range
+	public static int getAddressCount(String range)
+	{
+		int[] addresses = parseRange(range);
+		
+		return addresses[1] - addresses[0] + 1;
+	}
+	
+	private void start()
+	{
+		Log.d(TAG, "Probing " + m_count + " addresses from " + toAddress(m_first) + " with " + m_workers.get() + " workers");
+		
+		Executor pool = GoProScheduler.getInstance().getPool();
+		
+		for(int i = m_workers.get(); i > 0; --i)
+		{
+			pool.execute(new Runnable() {
+				@Override
+				public void run()
+				{
+					work();
+				}
+			});
+		}
+	}
+	
+	// Blocking call
+	private void work()
+	{
+		try
+		{
+			int index;
+			while(!m_future.isDone() && (index = m_next.getAndIncrement()) < m_count)
+			{
+				Hit hit = probe(toAddress(m_first + index));
+				
+				if(hit != null && !m_future.isDone())
+				{
+					m_hits.add(hit);
+					m_listener.onFound(hit);
+				}
+			}
+		}
+		catch(Exception e)
+		{
+			Log.e(TAG, "work", e);
+		}
+		finally
+		{
+			if(m_workers.decrementAndGet() == 0)
+			{
+				List<Hit> hits;
+				synchronized(m_hits)
+				{
+					hits = new ArrayList<Hit>(m_hits);
+				}
+				
+				Log.d(TAG, "Found " + hits.size() + " cameras in " + (System.currentTimeMillis() - m_start) + "ms");
+				m_future.complete(GoProResult.success(hits, GoProResult.NO_STATUS_CODE, System.currentTimeMillis() - m_start));
+			}
+		}
+	}
+	
+	// Blocking call
+	// The camera at the address, or null if nothing there answered like a GoPro. Each probe
+	// has a connection of its own that is closed afterwards, so a scan doesn't leave sockets
+	// in the shared pool. The model needs the password, so the requests follow one another.
+	// Plenty of web servers answer any path, so the address only counts if the model can be
+	// read or the password has the GoPro's length prefix. The bacpac answers even while the
+	// camera is off, so a camera without a model can still be reported.
+	private Hit probe(String ipAddress)
+	{
+		HttpConnection connection;
+		try
+		{
+			connection = new HttpConnection(ipAddress, HTTP_PORT, m_timeout);
+		}
+		catch(IOException e)
+		{
+			// Nothing there, or nothing listening
+			return null;
+		}
+		
+		Hit hit = null;
+		boolean verified = false;
+		
+		try
+		{
+			HttpResponse response = get(connection, ipAddress, NAME);
+			try
+			{
+				if(!response.isSuccess())
+				{
+					return null;
+				}
+				
+				String name = response.getBodyAsString();
+				hit = new Hit();
+				hit.ipAddress = ipAddress;
+				hit.name = name;
+				
+				if(!response.isKeepAlive())
+				{
+					return null;
+				}
+			}
+			finally
+			{
+				response.release();
+			}
+			
+			String password;
+			response = get(connection, ipAddress, PASSWORD);
+			try
+			{
+				if(!response.isSuccess() || response.getBodyLength() < 2)
+				{
+					return null;
+				}
+				
+				// The first 2 characters are the password length
+				verified = isPasswordResponse(response.getBody());
+				password = response.getBodyAsString().substring(2);
+				
+				if(!response.isKeepAlive())
+				{
+					return verified ? hit : null;
+				}
+			}
+			finally
+			{
+				response.release();
+			}
+			
+			response = get(connection, ipAddress, CAMERA_INFO + "?t=" + password);
+			try
+			{
+				if(response.isSuccess())
+				{
+					GoProCameraInfo cameraInfo = new GoProCameraInfo(response.getBodyAsString());
+					
+					if(!cameraInfo.modelId.equals("Unknown"))
+					{
+						hit.cameraInfo = cameraInfo;
+						verified = true;
+					}
+				}
+			}
+			finally
+			{
+				response.release();
+			}
+		}
+		catch(IOException e)
+		{
+			// A camera that stops answering part way is still reported, without its model
+			if(verified)
+			{
+				Log.d(TAG, "No camera info from " + ipAddress + ": " + e.getMessage());
+			}
+		}
+		finally
+		{
+			connection.close();
+		}
+		
+		return verified ? hit : null;
+	}
+	
+	// A status byte, then the password's length, then the password itself
+	private static boolean isPasswordResponse(byte[] body)
+	{
+		return body.length >= 2 && (body[1] & 0xFF) == body.length - 2;
+	}
+	
+	// Blocking call
+	// Send a GET on the probe's connection and read the response, within the per address timeout
+	private HttpResponse get(HttpConnection connection, String ipAddress, String file) throws IOException
+	{
+		connection.writeRequest(HttpUtils.makeGetRequest(ipAddress, file));
+		
+		return connection.readResponse(System.currentTimeMillis() + m_timeout);
+	}
+	
+	// First and last addresses of the range, as unsigned ints in an int
+	private static int[] parseRange(String range)
+	{
+		if(range == null)
+		{
+			throw new IllegalArgumentException("No address range");
+		}
+		
+		range = range.trim();
+		int first;
+		int last;
+		
+		int slash = range.indexOf('/');
+		int dash = range.indexOf('-');
+		
+		if(slash != -1)
+		{
+			int prefix = parseNumber(range.substring(slash + 1), 0, 32, range);
+			int mask = (prefix == 0) ? 0 : (0xFFFFFFFF << (32 - prefix));
+			
+			first = parseAddress(range.substring(0, slash)) & mask;
+			last = first | ~mask;
+			
+			// Leave out the network and broadcast addresses
+			if(prefix <= 30)
+			{
+				first++;
+				last--;
+			}
+		}
+		else if(dash != -1)
+		{
+			first = parseAddress(range.substring(0, dash));
+			last = parseAddress(range.substring(dash + 1));
+		}
+		else
+		{
+			first = last = parseAddress(range);
+		}
+		
+		long count = (last & 0xFFFFFFFFL) - (first & 0xFFFFFFFFL) + 1;
+		if(count < 1 || count > MAX_ADDRESSES)
+		{
+			throw new IllegalArgumentException("Can't probe " + count + " addresses in " + range + ", the most is " + MAX_ADDRESSES);
+		}
+		
+		return new int[] { first, last };
+	}
+	
+	private static int parseAddress(String address)
+	{
+		String[] parts = address.trim().split("\\.");
+		
+		if(parts.length != 4)
+		{
+			throw new IllegalArgumentException("Not an IP address: " + address);
+		}
+		
+		int value = 0;
+		for(String part : parts)
+		{
+			value = (value << 8) | parseNumber(part, 0, 255, address);
+		}
+		
+		return value;
+	}
+	
+	private static int parseNumber(String text, int min, int max, String context)
+	{
+		try
+		{
+			int value = Integer.parseInt(text.trim());
+			
+			if(value >= min && value <= max)
+			{
+				return value;
+			}
+		}
+		catch(NumberFormatException e)
+		{
+			// Reported below
+		}
+		
+		throw new IllegalArgumentException("Can't read " + context);
+	}
+	
+	private static String toAddress(int value)
+	{
+		return ((value >>> 24) & 0xFF) + "." + ((value >>> 16) & 0xFF) + "." + ((value >>> 8) & 0xFF) + "." + (value & 0xFF);
+	}
+}
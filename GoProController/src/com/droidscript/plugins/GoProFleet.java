@@ -0,0 +1,150 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview A named set of cameras, addressed one at a time, by group or all together.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Each camera keeps its own dispatcher lanes, all running on the shared worker pool, so
+// a command sent to several cameras goes to each of them at once, and a camera that has
+// stalled only holds up its own lanes. Targets are camera names, group names or "all",
+// separated by commas.
+public class GoProFleet
+{
+	public static String ALL = "all";
+
+	// Makes the listener for a camera's events, so they can be told apart by name
+	public interface ListenerFactory
+	{
+		GoProCameraListener create(String name);
+	}
+
+	private ListenerFactory m_listenerFactory;
+	private Map<String, GoProCamera> m_cameras = new LinkedHashMap<String, GoProCamera>();
+	private Map<String, List<String>> m_groups = new HashMap<String, List<String>>();
+
+	public GoProFleet(ListenerFactory listenerFactory)
+	{
+		m_listenerFactory = listenerFactory;
+	}
+
+	// A new camera with the name, replacing and closing any camera that already had it.
+	// The caller configures and connects it.
+	public GoProCamera add(String name)
+	{
+		GoProCamera camera = new GoProCamera(m_listenerFactory.create(name));
+		GoProCamera replaced;
+
+		synchronized(this)
+		{
+			replaced = m_cameras.put(name, camera);
+		}
+
+		if(replaced != null)
+		{
+			replaced.close();
+		}
+
+		return camera;
+	}
+
+	// Close the camera and forget it, returns false if there's no camera with the name
+	public boolean remove(String name)
+	{
+		GoProCamera camera;
+
+		synchronized(this)
+		{
+			camera = m_cameras.remove(name);
+		}
+
+		if(camera == null)
+		{
+			return false;
+		}
+
+		camera.close();
+		return true;
+	}
+
+	// Name a group of cameras, the cameras don't need to have been added yet
+	public synchronized void setGroup(String group, List<String> names)
+	{
+		m_groups.put(group, new ArrayList<String>(names));
+	}
+
+	// The cameras a target addresses, by name, in the order the target names them
+	public synchronized Map<String, GoProCamera> resolve(String target)
+	{
+		Map<String, GoProCamera> cameras = new LinkedHashMap<String, GoProCamera>();
+
+		for(String part : target.split(","))
+		{
+			String name = part.trim();
+
+			if(name.equals(ALL))
+			{
+				cameras.putAll(m_cameras);
+			}
+			else if(m_groups.containsKey(name))
+			{
+				for(String member : m_groups.get(name))
+				{
+					GoProCamera camera = m_cameras.get(member);
+					if(camera != null)
+					{
+						cameras.put(member, camera);
+					}
+				}
+			}
+			else if(m_cameras.containsKey(name))
+			{
+				cameras.put(name, m_cameras.get(name));
+			}
+		}
+
+		return cameras;
+	}
+	// Close and forget every camera, groups are kept for cameras added later
+	// Close every camera
+	public void close()
+	{
+		List<GoProCamera> cameras;
+
+		synchronized(this)
+		{
+			cameras = new ArrayList<GoProCamera>(m_cameras.values());
+			m_cameras.clear();
+		}
+
+		for(GoProCamera camera : cameras)
+		{
+			camera.close();
+		}
+	}
+}
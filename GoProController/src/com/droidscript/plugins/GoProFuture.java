@@ -0,0 +1,266 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview The pending result of a camera operation, with listeners and chaining.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A failed operation still completes the future normally, the failure is in the result,
+// so get() only throws if the future was cancelled. Listeners and continuations run on
+// the thread that completes the future (usually one of the camera's dispatcher lanes) or
+// straight away if it's already done, so they mustn't block.
+public class GoProFuture<T> implements Future<GoProResult<T>>
+{
+	public interface Listener<T>
+	{
+		void onComplete(GoProResult<T> result);
+	}
+
+	// The next operation to start once this one has succeeded
+	public interface Continuation<T, U>
+	{
+		GoProFuture<U> next(GoProResult<T> result);
+	}
+
+	private CountDownLatch m_done = new CountDownLatch(1);
+	private GoProResult<T> m_result;
+	private boolean m_cancelled = false;
+	private List<Listener<T>> m_listeners = new ArrayList<Listener<T>>();
+
+	public static <T> GoProFuture<T> completed(GoProResult<T> result)
+	{
+		GoProFuture<T> future = new GoProFuture<T>();
+		future.complete(result);
+
+		return future;
+	}
+
+	public static <T> GoProFuture<T> failed(Exception error)
+	{
+		return completed(GoProResult.<T>failure(error, GoProResult.NO_STATUS_CODE, 0));
+	}
+
+	// Completes when all of the futures have. Fails with the first failure if any of them
+	// fail, and takes the longest latency.
+	public static GoProFuture<Void> allOf(final List<? extends GoProFuture<?>> futures)
+	{
+		final GoProFuture<Void> all = new GoProFuture<Void>();
+		final AtomicInteger outstanding = new AtomicInteger(futures.size());
+
+		if(futures.isEmpty())
+		{
+			all.complete(GoProResult.<Void>success(null, GoProResult.NO_STATUS_CODE, 0));
+			return all;
+		}
+
+		for(GoProFuture<?> future : futures)
+		{
+			future.addListener(new Listener<Object>() {
+				@Override
+				public void onComplete(GoProResult<Object> result)
+				{
+					if(outstanding.decrementAndGet() > 0)
+					{
+						return;
+					}
+
+					GoProResult<?> failure = null;
+					int statusCode = GoProResult.NO_STATUS_CODE;
+					long latency = 0;
+
+					for(GoProFuture<?> done : futures)
+					{
+						GoProResult<?> doneResult = done.getNow();
+						latency = Math.max(latency, doneResult.getLatency());
+						statusCode = doneResult.getStatusCode();
+
+						if(failure == null && !doneResult.isSuccess())
+						{
+							failure = doneResult;
+						}
+					}
+
+					if(failure != null)
+					{
+						all.complete(GoProResult.<Void>failure(failure.getError(), failure.getStatusCode(), latency));
+					}
+					else
+					{
+						all.complete(GoProResult.<Void>success(null, statusCode, latency));
+					}
+				}
+			});
+		}
+
+		return all;
+	}
+
+	// Set the result, returns false if the future had already completed
+	public boolean complete(GoProResult<T> result)
+	{
+		return finish(result, false);
+	}
+
+	private boolean finish(GoProResult<T> result, boolean cancelled)
+	{
+		List<Listener<T>> listeners;
+
+		synchronized(this)
+		{
+			if(isDone())
+			{
+				return false;
+			}
+			m_result = result;
+			m_cancelled = cancelled;
+			listeners = m_listeners;
+			m_listeners = null;
+			m_done.countDown();
+		}
+
+		for(Listener<T> listener : listeners)
+		{
+			listener.onComplete(result);
+		}
+
+		return true;
+	}
+
+	// Call the listener once the operation completes, or now if it already has
+	@SuppressWarnings("unchecked")
+	public void addListener(Listener<? super T> listener)
+	{
+		Listener<T> typed = (Listener<T>)listener;
+
+		synchronized(this)
+		{
+			if(!isDone())
+			{
+				m_listeners.add(typed);
+				return;
+			}
+		}
+
+		typed.onComplete(m_result);
+	}
+
+	// Start the next operation once this one succeeds. If this one fails, the next isn't
+	// started and the returned future fails the same way.
+	public <U> GoProFuture<U> then(final Continuation<T, U> continuation)
+	{
+		final GoProFuture<U> chained = new GoProFuture<U>();
+
+		addListener(new Listener<T>() {
+			@Override
+			public void onComplete(GoProResult<T> result)
+			{
+				if(!result.isSuccess())
+				{
+					chained.complete(GoProResult.<U>failure(result.getError(), result.getStatusCode(), result.getLatency()));
+					return;
+				}
+
+				GoProFuture<U> next;
+				try
+				{
+					next = continuation.next(result);
+				}
+				catch(Exception e)
+				{
+					chained.complete(GoProResult.<U>failure(e, GoProResult.NO_STATUS_CODE, 0));
+					return;
+				}
+
+				next.addListener(new Listener<U>() {
+					@Override
+					public void onComplete(GoProResult<U> nextResult)
+					{
+						chained.complete(nextResult);
+					}
+				});
+			}
+		});
+
+		return chained;
+	}
+
+	// Stops the result being delivered, the request itself may still reach the camera
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning)
+	{
+		return finish(GoProResult.<T>failure(new CancellationException(), GoProResult.NO_STATUS_CODE, 0), true);
+	}
+
+	@Override
+	public synchronized boolean isCancelled()
+	{
+		return m_cancelled;
+	}
+
+	@Override
+	public boolean isDone()
+	{
+		return m_done.getCount() == 0;
+	}
+
+	@Override
+	public GoProResult<T> get() throws InterruptedException, ExecutionException
+	{
+		m_done.await();
+		return getResult();
+	}
+
+	@Override
+	public GoProResult<T> get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+	{
+		if(!m_done.await(timeout, unit))
+		{
+			throw new TimeoutException();
+		}
+		return getResult();
+	}
+
+	// The result if the operation has completed, otherwise null
+	public synchronized GoProResult<T> getNow()
+	{
+		return m_result;
+	}
+
+	private synchronized GoProResult<T> getResult()
+	{
+		if(m_cancelled)
+		{
+			throw new CancellationException();
+		}
+		return m_result;
+	}
+}
@@ -24,6 +24,9 @@
 
 package com.droidscript.plugins;
 
+import java.util.List;
+import java.util.Map;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -73,6 +76,12 @@ public class GoProJSON
 		public static String BEEP_VOLUME = "BeepVolume";
 		public static String SPOT_METER = "SpotMeter";
 		public static String LEDS = "LEDs";
+		
+		// Operation results
+		public static String SUCCESS = "Success";
+		public static String STATUS_CODE = "StatusCode";
+		public static String LATENCY = "Latency";
+		public static String ERROR = "Error";
 	};
 	
 	public static JSONObject getJSONCameraStatus(GoProCameraStatus status)
@@ -128,96 +137,558 @@ public class GoProJSON
 		return jsonStatus;
 	}
 	
-	public static void setCameraOptionsFromJSON(GoProCamera camera, JSONObject options) throws JSONException
+	// The status properties that have changed, e.g. {"VideoRecordingTime":{"Old":12,"New":14}}.
+	// Old is null for the first status after connecting.
+	public static JSONObject getJSONStatusChanges(List<GoProCameraStatus.Change> changes)
+	{
+		JSONObject jsonChanges = new JSONObject();
+		
+		try
+		{
+			for(GoProCameraStatus.Change change : changes)
+			{
+				JSONObject jsonChange = new JSONObject();
+				jsonChange.put("Old", (change.oldValue != null) ? getJSONValue(change.field, change.oldValue) : JSONObject.NULL);
+				jsonChange.put("New", getJSONValue(change.field, change.newValue));
+				
+				jsonChanges.put(getLabel(change.field), jsonChange);
+			}
+		}
+		catch (Exception e) 
+		{
+			Log.e(TAG, "getJSONStatusChanges", e);
+			jsonChanges = null;
+		}
+		
+		return jsonChanges;
+	}
+	
+	// The JSON label for a status property, as used by getJSONCameraStatus
+	public static String getLabel(GoProCameraStatus.Field field)
+	{
+		switch(field)
+		{
+		case VIDEO_STANDARD:
+			return GoProJSONLabels.VIDEO_STANDARD;
+		case VIDEO_MODE:
+			return GoProJSONLabels.VIDEO_MODE;
+		case VIDEO_FRAME_RATE:
+			return GoProJSONLabels.VIDEO_FPS;
+		case VIDEO_FOV:
+			return GoProJSONLabels.VIDEO_FOV;
+		case VIDEO_RECORDING_TIME:
+			return GoProJSONLabels.VIDEO_RECORDING_TIME;
+		case VIDEO_AVAILABLE_TIME:
+			return GoProJSONLabels.VIDEO_AVAILABLE_TIME;
+		case VIDEO_COUNT:
+			return GoProJSONLabels.VIDEO_COUNT;
+		case VIDEO_RECORDING:
+			return GoProJSONLabels.VIDEO_RECORDING;
+		case PHOTO_MODE:
+			return GoProJSONLabels.PHOTO_MODE;
+		case PHOTO_COUNT:
+			return GoProJSONLabels.PHOTO_COUNT;
+		case PHOTOS_AVAILABLE:
+			return GoProJSONLabels.PHOTOS_AVAILABLE;
+		case BURST_RATE:
+			return GoProJSONLabels.BURST_RATE;
+		case BURST_RECORDING:
+			return GoProJSONLabels.BURST_RECORDING;
+		case TIMELAPSE_INTERVAL:
+			return GoProJSONLabels.TIMELAPSE_INTERVAL;
+		case CAMERA_MODE:
+			return GoProJSONLabels.CAMERA_MODE;
+		case DEFAULT_CAMERA_MODE:
+			return GoProJSONLabels.DEFAULT_CAMERA_MODE;
+		case PREVIEW:
+			return GoProJSONLabels.PREVIEW;
+		case ORIENTATION:
+			return GoProJSONLabels.ORIENTATION;
+		case ONE_BUTTON:
+			return GoProJSONLabels.ONE_BUTTON;
+		case OSD:
+			return GoProJSONLabels.OSD;
+		case LOCATE:
+			return GoProJSONLabels.LOCATE;
+		case PROTUNE:
+			return GoProJSONLabels.PROTUNE;
+		case BATTERY_LEVEL:
+			return GoProJSONLabels.BATTERY_LEVEL;
+		case SD_CARD:
+			return GoProJSONLabels.SD_CARD;
+		case AUTO_POWER_OFF:
+			return GoProJSONLabels.AUTO_POWER_OFF;
+		case BEEP_VOLUME:
+			return GoProJSONLabels.BEEP_VOLUME;
+		case LEDS:
+			return GoProJSONLabels.LEDS;
+		default:
+			return GoProJSONLabels.SPOT_METER;
+		}
+	}
+	
+	// The status property with the JSON label, null if there isn't one
+	public static GoProCameraStatus.Field getField(String label)
+	{
+		for(GoProCameraStatus.Field field : GoProCameraStatus.Field.values())
+		{
+			if(getLabel(field).equals(label))
+			{
+				return field;
+			}
+		}
+		
+		return null;
+	}
+	
+	// A status property's value as getJSONCameraStatus puts it
+	private static Object getJSONValue(GoProCameraStatus.Field field, Object value)
 	{
+		switch(field)
+		{
+		case VIDEO_MODE:
+			return VideoModeToString((VideoMode)value);
+		case PHOTO_MODE:
+			return PhotoModeToString((PhotoMode)value);
+		case BURST_RATE:
+			return BurstRateToString((BurstRate)value);
+		case ORIENTATION:
+			return OrientationToString((Orientation)value);
+		case AUTO_POWER_OFF:
+			return AutoPowerOffToString((AutoPowerOff)value);
+		case LEDS:
+			return LEDsToString((LEDs)value);
+		case SD_CARD:
+			return ((Boolean)value) ? "Yes" : "No";
+		default:
+			if(value instanceof Boolean)
+			{
+				return ((Boolean)value) ? "On" : "Off";
+			}
+			else if(value instanceof Enum)
+			{
+				return value.toString();
+			}
+			return value;
+		}
+	}
+	
+	// The outcome of an operation for a script callback, e.g. {"Success":true,"StatusCode":200,"Latency":85}
+	public static JSONObject getJSONResult(GoProResult<?> result)
+	{
+		JSONObject jsonResult = new JSONObject();
+		
 		try
 		{
-	        // These properties should be set first since they will have an effect on the available Video settings
-	        if(options.has(GoProJSONLabels.CAMERA_MODE))
-	        {
-	        	camera.setCameraMode(CameraModeFromString(options.getString(GoProJSONLabels.CAMERA_MODE)));
-	        }
-	        if(options.has(GoProJSONLabels.PROTUNE))
-	        {
-	        	camera.setProtune(BoolFromString(options.getString(GoProJSONLabels.PROTUNE)));
-	        }
-	        
-	        // Video Properties
-	        if(options.has(GoProJSONLabels.VIDEO_STANDARD))
-			{
-				camera.setVideoStandard(VideoStandardFromString(options.getString(GoProJSONLabels.VIDEO_STANDARD)));
-			}
-	        if(options.has(GoProJSONLabels.VIDEO_MODE))
-	        {
-	        	camera.setVideoMode(VideoModeFromString(options.getString(GoProJSONLabels.VIDEO_MODE)));
-	        }
-	        if(options.has(GoProJSONLabels.VIDEO_FPS))
-	        {
-	        	camera.setVideoFPS(options.getDouble(GoProJSONLabels.VIDEO_FPS));
-	        }
-	        if(options.has(GoProJSONLabels.VIDEO_FOV))
-	        {
-	        	camera.setVideoFOV(FieldOfViewFromString(options.getString(GoProJSONLabels.VIDEO_FOV)));
-	        }
+			jsonResult.put(GoProJSONLabels.SUCCESS, result.isSuccess());
+			jsonResult.put(GoProJSONLabels.STATUS_CODE, result.getStatusCode());
+			jsonResult.put(GoProJSONLabels.LATENCY, result.getLatency());
 			
-			// Photo Properties
-	        if(options.has(GoProJSONLabels.PHOTO_MODE))
-	        {
-	        	camera.setPhotoMode(PhotoModeFromString(options.getString(GoProJSONLabels.PHOTO_MODE)));
-	        }
+			if(!result.isSuccess())
+			{
+				jsonResult.put(GoProJSONLabels.ERROR, String.valueOf(result.getError()));
+			}
+		}
+		catch (Exception e) 
+		{
+			Log.e(TAG, "getJSONResult", e);
+			jsonResult = null;
+		}
+		
+		return jsonResult;
+	}
+	
+	// How long the last connect took, e.g. {"Connected":180,"Ready":240}, -1 for events that haven't happened
+	public static JSONObject getJSONConnectTimes(GoProCamera camera)
+	{
+		JSONObject jsonTimes = new JSONObject();
+		
+		try
+		{
+			jsonTimes.put("Connected", camera.getTimeToConnected());
+			jsonTimes.put("Ready", camera.getTimeToReady());
+		}
+		catch (Exception e) 
+		{
+			Log.e(TAG, "getJSONConnectTimes", e);
+			jsonTimes = null;
+		}
+		
+		return jsonTimes;
+	}
+	
+	// A synchronized shutter's outcome for each camera, keyed by name, with times in
+	// milliseconds after the release, and the skew between the acknowledgements, e.g.
+	// {"Skew":9,"Cameras":{"Left":{"Success":true,"StatusCode":200,"Latency":38,"Sent":0,"Ack":38}}}
+	public static JSONObject getJSONSyncShutter(GoProSyncShutter.Result result)
+	{
+		JSONObject jsonResult = new JSONObject();
+		
+		try
+		{
+			JSONObject jsonCameras = new JSONObject();
 			
-			// Burst Properties
-	        if(options.has(GoProJSONLabels.BURST_RATE))
-	        {
-	        	camera.setBurstRate(BurstRateFromString(options.getString(GoProJSONLabels.BURST_RATE)));
-	        }
-	        
-			// Timelapse Properties
-	        if(options.has(GoProJSONLabels.TIMELAPSE_INTERVAL))
-	        {
-	        	camera.setTimelapseInterval(options.getDouble(GoProJSONLabels.TIMELAPSE_INTERVAL));
-	        }
+			for(Map.Entry<String, GoProResult<GoProSyncShutter.Ack>> entry : result.acks.entrySet())
+			{
+				GoProResult<GoProSyncShutter.Ack> ack = entry.getValue();
+				JSONObject jsonCamera = getJSONResult(ack);
+				
+				if(ack.isSuccess())
+				{
+					jsonCamera.put("Sent", ack.getValue().sent);
+					jsonCamera.put("Ack", ack.getValue().acknowledged);
+				}
+				
+				jsonCameras.put(entry.getKey(), jsonCamera);
+			}
 			
-			// General Properties
-	        if(options.has(GoProJSONLabels.ORIENTATION))
+			jsonResult.put("Skew", result.skew);
+			jsonResult.put("Cameras", jsonCameras);
+		}
+		catch (Exception e) 
+		{
+			Log.e(TAG, "getJSONSyncShutter", e);
+			jsonResult = null;
+		}
+		
+		return jsonResult;
+	}
+	
+	// The cameras a discovery scan found, keyed by ip address, e.g.
+	// {"10.5.5.9":{"Name":"Left","Model":"HERO3 Black","ModelId":"HD3.02","Firmware":"03.00"}}
+	public static JSONObject getJSONDiscovery(List<GoProDiscovery.Hit> hits)
+	{
+		JSONObject jsonHits = new JSONObject();
+		
+		try
+		{
+			for(GoProDiscovery.Hit hit : hits)
 			{
-				Orientation orientation = OrientationFromString(options.getString(GoProJSONLabels.ORIENTATION));
-				camera.setOrientation(orientation);
+				JSONObject jsonHit = new JSONObject();
+				jsonHit.put("Name", hit.name);
+				
+				if(hit.cameraInfo != null)
+				{
+					jsonHit.put("Model", hit.cameraInfo.modelName);
+					jsonHit.put("ModelId", hit.cameraInfo.modelId);
+					jsonHit.put("Firmware", hit.cameraInfo.firmware);
+				}
+				
+				jsonHits.put(hit.ipAddress, jsonHit);
 			}
-	        // IGNORE ONE BUTTON (N/A when under remote control)
-//	        if(options.has(GoProJSONLabels.ONE_BUTTON))
-//			{
-//				camera.setOneButton(BoolFromString(options.getString(GoProJSONLabels.ONE_BUTTON)));
-//			}
-	        if(options.has(GoProJSONLabels.OSD))
+		}
+		catch (Exception e) 
+		{
+			Log.e(TAG, "getJSONDiscovery", e);
+			jsonHits = null;
+		}
+		
+		return jsonHits;
+	}
+	
+	// How each camera is doing, keyed by name, e.g. {"Left":{"Connected":true,"Ready":true,"Health":"Alive"}}
+	public static JSONObject getJSONFleet(Map<String, GoProCamera> cameras)
+	{
+		JSONObject jsonFleet = new JSONObject();
+		
+		try
+		{
+			for(Map.Entry<String, GoProCamera> entry : cameras.entrySet())
 			{
-				camera.setOSD(BoolFromString(options.getString(GoProJSONLabels.OSD)));
+				GoProCamera camera = entry.getValue();
+				GoProCameraState state = camera.getState();
+				
+				JSONObject jsonCamera = new JSONObject();
+				jsonCamera.put("Connected", state.isConnected());
+				jsonCamera.put("Ready", state.isReady());
+				jsonCamera.put("Health", camera.getHealth().getLabel());
+				
+				jsonFleet.put(entry.getKey(), jsonCamera);
 			}
-	        if(options.has(GoProJSONLabels.DEFAULT_CAMERA_MODE))
+		}
+		catch (Exception e) 
+		{
+			Log.e(TAG, "getJSONFleet", e);
+			jsonFleet = null;
+		}
+		
+		return jsonFleet;
+	}
+	
+	// How busy the camera's dispatcher lanes have been, keyed by lane name
+	public static JSONObject getJSONLaneStats(GoProCamera camera)
+	{
+		JSONObject jsonStats = new JSONObject();
+		
+		try
+		{
+			for(PriorityDispatcher.Lane lane : PriorityDispatcher.Lane.values())
 			{
-				camera.setDefaultCameraMode(CameraModeFromString(options.getString(GoProJSONLabels.DEFAULT_CAMERA_MODE)));
+				PriorityDispatcher.LaneStats stats = camera.getLaneStats(lane);
+				
+				JSONObject jsonLane = new JSONObject();
+				jsonLane.put("Concurrency", stats.concurrency);
+				jsonLane.put("Capacity", stats.capacity);
+				jsonLane.put("Queued", stats.queued);
+				jsonLane.put("Running", stats.running);
+				jsonLane.put("Completed", stats.completed);
+				jsonLane.put("Rejected", stats.rejected);
+				jsonLane.put("Utilization", stats.utilization);
+				jsonLane.put("AverageWait", stats.averageWait);
+				
+				jsonStats.put(lane.name(), jsonLane);
 			}
-	        if(options.has(GoProJSONLabels.BEEP_VOLUME))
+		}
+		catch (Exception e) 
+		{
+			Log.e(TAG, "getJSONLaneStats", e);
+			jsonStats = null;
+		}
+		
+		return jsonStats;
+	}
+	
+	// Options in the order they are sent, most expensive first. Changing the camera mode or
+	// Protune reconfigures the camera and changes which video settings are valid, and the video
+	// format settings each make the camera re-validate the others, so they go before the
+	// settings that only change themselves.
+	private static String[] OPTION_ORDER = {
+		GoProJSONLabels.CAMERA_MODE,
+		GoProJSONLabels.PROTUNE,
+		GoProJSONLabels.VIDEO_STANDARD,
+		GoProJSONLabels.VIDEO_MODE,
+		GoProJSONLabels.VIDEO_FPS,
+		GoProJSONLabels.VIDEO_FOV,
+		GoProJSONLabels.PHOTO_MODE,
+		GoProJSONLabels.BURST_RATE,
+		GoProJSONLabels.TIMELAPSE_INTERVAL,
+		GoProJSONLabels.ORIENTATION,
+		GoProJSONLabels.OSD,
+		GoProJSONLabels.DEFAULT_CAMERA_MODE,
+		GoProJSONLabels.BEEP_VOLUME,
+		GoProJSONLabels.SPOT_METER,
+		GoProJSONLabels.LEDS,
+		GoProJSONLabels.AUTO_POWER_OFF
+	};
+	
+	// Only options that differ from the camera's last known status are sent, when there
+	// is no status every option is sent. Returns the number of options skipped, the futures
+	// for the options that are sent are added to sent if it isn't null. An option whose
+	// value can't be read doesn't stop the rest, it's added to sent as a failed future.
+	public static int setCameraOptionsFromJSON(GoProCamera camera, JSONObject options, List<GoProFuture<Void>> sent) throws JSONException
+	{
+		GoProCameraStatus status = camera.getLastStatus();
+		int skipped = 0;
+		
+		for(String label : OPTION_ORDER)
+		{
+			if(!options.has(label))
 			{
-				camera.setBeepVolume(options.getInt(GoProJSONLabels.BEEP_VOLUME));
+				continue;
 			}
-	        if(options.has(GoProJSONLabels.SPOT_METER))
+			
+			GoProFuture<Void> future;
+			try
 			{
-				camera.setSpotMeter(BoolFromString(options.getString(GoProJSONLabels.SPOT_METER)));
+				future = setCameraOption(camera, status, label, options);
 			}
-	        if(options.has(GoProJSONLabels.LEDS))
+			catch (Exception e) 
 			{
-				camera.setLEDs(LEDsFromString(options.getString(GoProJSONLabels.LEDS)));
+				Log.e(TAG, "setCameraOptionsFromJSON " + label, e);
+				future = GoProFuture.failed(new IllegalArgumentException("Can't set " + label + ": " + e.getMessage()));
 			}
-	        if(options.has(GoProJSONLabels.AUTO_POWER_OFF))
+			
+			if(future == null)
 			{
-				camera.setAutoPowerOff(AutoPowerOffFromString(options.getString(GoProJSONLabels.AUTO_POWER_OFF)));
+				skipped++;
 			}
-		} 
-		catch (Exception e) 
+			else if(sent != null)
+			{
+				sent.add(future);
+			}
+		}
+		
+        // IGNORE ONE BUTTON (N/A when under remote control)
+//        if(options.has(GoProJSONLabels.ONE_BUTTON))
+//		{
+//			camera.setOneButton(BoolFromString(options.getString(GoProJSONLabels.ONE_BUTTON)));
+//		}
+		
+		return skipped;
+	}
+	
+	// Send the option unless the status shows the camera already has that value.
+	// Returns null if it was skipped.
+	private static GoProFuture<Void> setCameraOption(GoProCamera camera, GoProCameraStatus status, String label, JSONObject options) throws JSONException
+	{
+		if(label.equals(GoProJSONLabels.CAMERA_MODE))
 		{
-			Log.e(TAG, "setCameraOptionsFromJSON", e);
+			CameraMode mode = CameraModeFromString(options.getString(label));
+			if(status != null && status.cameraMode == mode)
+			{
+				return null;
+			}
+			return camera.setCameraMode(mode);
 		}
+		else if(label.equals(GoProJSONLabels.PROTUNE))
+		{
+			boolean on = BoolFromString(options.getString(label));
+			if(status != null && status.protuneOn == on)
+			{
+				return null;
+			}
+			return camera.setProtune(on);
+		}
+		
+		// Video Properties
+		else if(label.equals(GoProJSONLabels.VIDEO_STANDARD))
+		{
+			VideoStandard standard = VideoStandardFromString(options.getString(label));
+			if(status != null && status.videoStandard == standard)
+			{
+				return null;
+			}
+			return camera.setVideoStandard(standard);
+		}
+		else if(label.equals(GoProJSONLabels.VIDEO_MODE))
+		{
+			VideoMode mode = VideoModeFromString(options.getString(label));
+			if(status != null && status.videoMode == mode)
+			{
+				return null;
+			}
+			return camera.setVideoMode(mode);
+		}
+		else if(label.equals(GoProJSONLabels.VIDEO_FPS))
+		{
+			double fps = options.getDouble(label);
+			if(status != null && status.videoFrameRate == fps)
+			{
+				return null;
+			}
+			return camera.setVideoFPS(fps);
+		}
+		else if(label.equals(GoProJSONLabels.VIDEO_FOV))
+		{
+			FieldOfView fov = FieldOfViewFromString(options.getString(label));
+			if(status != null && status.videoFOV == fov)
+			{
+				return null;
+			}
+			return camera.setVideoFOV(fov);
+		}
+		
+		// Photo Properties
+		else if(label.equals(GoProJSONLabels.PHOTO_MODE))
+		{
+			PhotoMode mode = PhotoModeFromString(options.getString(label));
+			if(status != null && status.photoMode == mode)
+			{
+				return null;
+			}
+			return camera.setPhotoMode(mode);
+		}
+		
+		// Burst Properties
+		else if(label.equals(GoProJSONLabels.BURST_RATE))
+		{
+			BurstRate rate = BurstRateFromString(options.getString(label));
+			if(status != null && status.burstRate == rate)
+			{
+				return null;
+			}
+			return camera.setBurstRate(rate);
+		}
+		
+		// Timelapse Properties
+		else if(label.equals(GoProJSONLabels.TIMELAPSE_INTERVAL))
+		{
+			double interval = options.getDouble(label);
+			if(status != null && status.timelapseInterval == interval)
+			{
+				return null;
+			}
+			return camera.setTimelapseInterval(interval);
+		}
+		
+		// General Properties
+		else if(label.equals(GoProJSONLabels.ORIENTATION))
+		{
+			Orientation orientation = OrientationFromString(options.getString(label));
+			if(status != null && status.orientation == orientation)
+			{
+				return null;
+			}
+			return camera.setOrientation(orientation);
+		}
+		else if(label.equals(GoProJSONLabels.OSD))
+		{
+			boolean on = BoolFromString(options.getString(label));
+			if(status != null && status.osdOn == on)
+			{
+				return null;
+			}
+			return camera.setOSD(on);
+		}
+		else if(label.equals(GoProJSONLabels.DEFAULT_CAMERA_MODE))
+		{
+			CameraMode mode = CameraModeFromString(options.getString(label));
+			if(status != null && status.defaultCameraMode == mode)
+			{
+				return null;
+			}
+			return camera.setDefaultCameraMode(mode);
+		}
+		else if(label.equals(GoProJSONLabels.BEEP_VOLUME))
+		{
+			// The camera only has three volume levels, compare the level the volume selects
+			int volume = options.getInt(label);
+			if(status != null && BeepVolumeLevel(status.beepVolume) == BeepVolumeLevel(volume))
+			{
+				return null;
+			}
+			return camera.setBeepVolume(volume);
+		}
+		else if(label.equals(GoProJSONLabels.SPOT_METER))
+		{
+			boolean on = BoolFromString(options.getString(label));
+			if(status != null && status.spotMeter == on)
+			{
+				return null;
+			}
+			return camera.setSpotMeter(on);
+		}
+		else if(label.equals(GoProJSONLabels.LEDS))
+		{
+			LEDs leds = LEDsFromString(options.getString(label));
+			if(status != null && status.leds == leds)
+			{
+				return null;
+			}
+			return camera.setLEDs(leds);
+		}
+		else if(label.equals(GoProJSONLabels.AUTO_POWER_OFF))
+		{
+			AutoPowerOff autoPowerOff = AutoPowerOffFromString(options.getString(label));
+			if(status != null && status.autoPowerOff == autoPowerOff)
+			{
+				return null;
+			}
+			return camera.setAutoPowerOff(autoPowerOff);
+		}
+		
+		return null;
+	}
+	
+	// Same mapping as GoProCamera.setBeepVolume: off, 70% or 100%
+	private static int BeepVolumeLevel(int volume)
+	{
+		if(volume <= 0)
+		{
+			return 0;
+		}
+		
+		return (volume <= 70) ? 1 : 2;
 	}
 	
 	private static String VideoModeToString(VideoMode videoMode)
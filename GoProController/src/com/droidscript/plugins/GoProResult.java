@@ -0,0 +1,89 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview The outcome of a camera operation: its value or error, the HTTP status and how long it took.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+public class GoProResult<T>
+{
+	// Status code for results that didn't need a request, e.g. a cached status
+	public static int NO_STATUS_CODE = -1;
+
+	private T m_value;
+	private Exception m_error;
+	private int m_statusCode;
+	private long m_latency;
+
+	private GoProResult(T value, Exception error, int statusCode, long latency)
+	{
+		m_value = value;
+		m_error = error;
+		m_statusCode = statusCode;
+		m_latency = latency;
+	}
+
+	public static <T> GoProResult<T> success(T value, int statusCode, long latency)
+	{
+		return new GoProResult<T>(value, null, statusCode, latency);
+	}
+
+	public static <T> GoProResult<T> failure(Exception error, int statusCode, long latency)
+	{
+		return new GoProResult<T>(null, error, statusCode, latency);
+	}
+
+	public boolean isSuccess()
+	{
+		return m_error == null;
+	}
+
+	// The value, null for commands and failed operations
+	public T getValue()
+	{
+		return m_value;
+	}
+
+	// Why the operation failed, null if it succeeded
+	public Exception getError()
+	{
+		return m_error;
+	}
+
+	// The HTTP status code of the camera's response, NO_STATUS_CODE if it didn't respond
+	public int getStatusCode()
+	{
+		return m_statusCode;
+	}
+
+	// Milliseconds from the request being sent to the response being read
+	public long getLatency()
+	{
+		return m_latency;
+	}
+
+	@Override
+	public String toString()
+	{
+		return (isSuccess() ? "OK" : "Failed (" + m_error + ")") + ", status " + m_statusCode + ", " + m_latency + "ms";
+	}
+}
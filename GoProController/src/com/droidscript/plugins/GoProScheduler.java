@@ -0,0 +1,193 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview Timers and worker threads shared by every camera in the process.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.util.Log;
+
+// One timer thread runs every camera's polls, and one pool of worker threads runs every
+// camera's dispatcher lanes, so connecting again and again doesn't leave threads behind.
+// Pool threads are daemons and stop after a minute with nothing to do. Each camera
+// registers for a phase, and its polls are lined up on that phase so cameras polling at
+// the same interval take turns instead of all asking at once.
+public class GoProScheduler
+{
+	private static String TAG = "GoProScheduler";
+
+	// Spaces phases evenly however many cameras register
+	private static double GOLDEN_RATIO_FRACTION = 0.6180339887;
+
+	private static GoProScheduler s_instance;
+
+	private ScheduledExecutorService m_timer;
+	private ExecutorService m_pool;
+	private AtomicInteger m_registrations = new AtomicInteger();
+
+	// A camera's (or the connection pool's) hold on the scheduler, closing it cancels
+	// everything it scheduled
+	public class Registration
+	{
+		private double m_phase;
+		private Set<ScheduledFuture<?>> m_scheduled = new HashSet<ScheduledFuture<?>>();
+		private boolean m_closed = false;
+
+		private Registration(double phase)
+		{
+			m_phase = phase;
+		}
+
+		// Run the task on the timer thread after the delay. It must return quickly, and hand
+		// anything that blocks to a dispatcher. Returns false if the registration is closed.
+		public synchronized boolean schedule(final Runnable task, long delay)
+		{
+			if(m_closed)
+			{
+				return false;
+			}
+
+			final ScheduledFuture<?>[] scheduled = new ScheduledFuture<?>[1];
+
+			scheduled[0] = m_timer.schedule(new Runnable() {
+				@Override
+				public void run()
+				{
+					synchronized(Registration.this)
+					{
+						if(!m_scheduled.remove(scheduled[0]))
+						{
+							return; // Closed
+						}
+					}
+
+					try
+					{
+						task.run();
+					}
+					catch(Exception e)
+					{
+						// Don't let one camera's task kill the timer thread for the others
+						Log.e(TAG, "run", e);
+					}
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+
+			m_scheduled.add(scheduled[0]);
+
+			return true;
+		}
+
+		// A delay within half an interval of the one asked for that lands on this registration's phase
+		public long getPhasedDelay(long interval)
+		{
+			if(interval <= 1)
+			{
+				return interval;
+			}
+
+			long now = System.currentTimeMillis();
+			long earliest = now + interval / 2;
+			long offset = (long)(interval * m_phase);
+			long past = ((earliest - offset) % interval + interval) % interval;
+
+			return (past == 0) ? earliest - now : earliest - now + interval - past;
+		}
+
+		// Cancel everything scheduled, and stop anything more being scheduled
+		public synchronized void close()
+		{
+			if(m_closed)
+			{
+				return;
+			}
+
+			m_closed = true;
+
+			for(ScheduledFuture<?> scheduled : m_scheduled)
+			{
+				scheduled.cancel(false);
+			}
+			m_scheduled.clear();
+		}
+	}
+
+	public static synchronized GoProScheduler getInstance()
+	{
+		if(s_instance == null)
+		{
+			s_instance = new GoProScheduler();
+		}
+
+		return s_instance;
+	}
+
+	private GoProScheduler()
+	{
+		m_timer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("GoPro-scheduler"));
+		m_pool = Executors.newCachedThreadPool(new NamedThreadFactory("GoPro-worker"));
+	}
+
+	public Registration register()
+	{
+		int index = m_registrations.getAndIncrement();
+
+		return new Registration((index * GOLDEN_RATIO_FRACTION) % 1.0);
+	}
+
+	// Threads for the cameras' dispatcher lanes, see PriorityDispatcher.sharedPool
+	public Executor getPool()
+	{
+		return m_pool;
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory
+	{
+		private String m_name;
+		private AtomicInteger m_count = new AtomicInteger();
+
+		public NamedThreadFactory(String name)
+		{
+			m_name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, m_name + "-" + m_count.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
+}
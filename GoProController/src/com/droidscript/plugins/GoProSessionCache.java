@@ -0,0 +1,162 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview Remembers each camera's name, password and info between connections and app restarts.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+import android.util.Log;
+
+// Sessions are stored in the plugin's private shared preferences, keyed by the camera's
+// ip address and the MAC address of the Wifi hotspot we're connected to. Every GoPro uses
+// the same ip address, so without the MAC nothing is cached. The password is the one the
+// camera hands to anyone on its hotspot, so it isn't treated as a secret.
+public class GoProSessionCache
+{
+	private static String TAG = "GoProSessionCache";
+	private static String PREFERENCES_NAME = "GoProController.sessions";
+
+	private static String NAME = ".name";
+	private static String PASSWORD = ".password";
+	private static String MODEL_ID = ".modelId";
+	private static String FIRMWARE = ".firmware";
+
+	private static String UNKNOWN_BSSID = "02:00:00:00:00:00";
+
+	public static class Session
+	{
+		public String wifiName;
+		public String password;
+		public GoProCameraInfo cameraInfo; // null if the camera wasn't ready while connected
+	}
+
+	private Context m_context;
+	private SharedPreferences m_preferences;
+
+	public GoProSessionCache(Context context)
+	{
+		m_context = context;
+		m_preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+	}
+
+	// The saved session for the camera at ipAddress on the current hotspot, or null
+	public synchronized Session load(String ipAddress)
+	{
+		String key = getKey(ipAddress);
+
+		if(key == null)
+		{
+			return null;
+		}
+
+		String password = m_preferences.getString(key + PASSWORD, null);
+
+		if(password == null)
+		{
+			return null;
+		}
+
+		Session session = new Session();
+		session.wifiName = m_preferences.getString(key + NAME, null);
+		session.password = password;
+
+		String modelId = m_preferences.getString(key + MODEL_ID, null);
+		if(modelId != null)
+		{
+			session.cameraInfo = new GoProCameraInfo(modelId, m_preferences.getString(key + FIRMWARE, "Unknown"));
+		}
+
+		return session;
+	}
+
+	public synchronized void save(String ipAddress, Session session)
+	{
+		String key = getKey(ipAddress);
+
+		if(key == null)
+		{
+			return;
+		}
+
+		SharedPreferences.Editor editor = m_preferences.edit();
+		editor.putString(key + NAME, session.wifiName);
+		editor.putString(key + PASSWORD, session.password);
+
+		if(session.cameraInfo != null)
+		{
+			editor.putString(key + MODEL_ID, session.cameraInfo.modelId);
+			editor.putString(key + FIRMWARE, session.cameraInfo.firmware);
+		}
+
+		editor.commit();
+	}
+
+	// Forget the session, e.g. after the camera rejected its password
+	public synchronized void invalidate(String ipAddress)
+	{
+		String key = getKey(ipAddress);
+
+		if(key == null)
+		{
+			return;
+		}
+
+		Log.d(TAG, "Invalidating session " + key);
+
+		m_preferences.edit()
+			.remove(key + NAME)
+			.remove(key + PASSWORD)
+			.remove(key + MODEL_ID)
+			.remove(key + FIRMWARE)
+			.commit();
+	}
+
+	// ip address and hotspot MAC address, null if the MAC address can't be read
+	private String getKey(String ipAddress)
+	{
+		try
+		{
+			WifiManager wifiManager = (WifiManager)m_context.getSystemService(Context.WIFI_SERVICE);
+			WifiInfo wifiInfo = (wifiManager != null) ? wifiManager.getConnectionInfo() : null;
+			String bssid = (wifiInfo != null) ? wifiInfo.getBSSID() : null;
+
+			// Without location permission Android hands out the same placeholder for every
+			// hotspot, which would mix up cameras sharing the ip address
+			if(bssid == null || bssid.length() == 0 || bssid.equals(UNKNOWN_BSSID))
+			{
+				return null;
+			}
+
+			return ipAddress + "/" + bssid.toLowerCase();
+		}
+		catch(Exception e)
+		{
+			// No permission to read the Wifi state
+			Log.e(TAG, "getKey", e);
+			return null;
+		}
+	}
+}
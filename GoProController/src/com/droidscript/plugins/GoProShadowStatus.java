@@ -0,0 +1,82 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview Cached copy of a camera's status, kept up to date by polling and by our own settings changes.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+// The status last read from the camera, with the settings we've changed since applied
+// on top. The published status is never modified, each change is made to a copy which
+// then replaces it, so callers can hold on to what get() returns without locking.
+public class GoProShadowStatus
+{
+	// A change to apply to the status, e.g. a setting we've just sent
+	public interface Change
+	{
+		void apply(GoProCameraStatus status);
+	}
+
+	private volatile GoProCameraStatus m_status;
+	private volatile long m_readTime; // When m_status was last read from the camera
+
+	// Replace the shadow with a status just read from the camera
+	public synchronized void update(GoProCameraStatus status)
+	{
+		m_readTime = System.currentTimeMillis();
+		m_status = status;
+	}
+
+	// Apply a change to the shadow, leaving its age alone. Does nothing until a status has been read.
+	public synchronized void apply(Change change)
+	{
+		if(m_status != null)
+		{
+			GoProCameraStatus status = new GoProCameraStatus(m_status);
+			change.apply(status);
+			m_status = status;
+		}
+	}
+
+	// The status, or null if it was read from the camera more than maxAge milliseconds ago
+	public GoProCameraStatus get(long maxAge)
+	{
+		GoProCameraStatus status = m_status;
+
+		if(status == null || getAge() > maxAge)
+		{
+			return null;
+		}
+
+		return status;
+	}
+
+	// Milliseconds since the status was read from the camera, Long.MAX_VALUE if it never has been
+	public long getAge()
+	{
+		return (m_status != null) ? System.currentTimeMillis() - m_readTime : Long.MAX_VALUE;
+	}
+
+	public synchronized void clear()
+	{
+		m_status = null;
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview Starts or stops the shutter on several cameras at as close to the same moment as possible.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Each camera arms on its own urgent lane: it builds the shutter request and takes a warm
+// connection from the pool, then waits at the barrier. When the last camera has armed (or
+// failed to) the barrier releases them all at once, so the only work left between release
+// and the request going out is one socket write. The result has, for each camera, when the
+// request was written and when it was acknowledged, measured from the release, and the skew
+// between the earliest and latest acknowledgement.
+public class GoProSyncShutter
+{
+	// Longest to wait for every camera to arm, after that the armed cameras go without the rest
+	public static long ARM_TIMEOUT = 5000;
+
+	// When one camera's request was sent and answered, in milliseconds after the release
+	public static class Ack
+	{
+		public long sent;
+		public long acknowledged;
+	}
+
+	public static class Result
+	{
+		public Map<String, GoProResult<Ack>> acks = new LinkedHashMap<String, GoProResult<Ack>>();
+		public long skew = -1; // Latest minus earliest acknowledgement, -1 if fewer than two cameras acknowledged
+	}
+
+	private CountDownLatch m_release = new CountDownLatch(1);
+	private AtomicInteger m_arming;
+	private volatile long m_releaseTime;
+
+	private GoProSyncShutter(int cameras)
+	{
+		m_arming = new AtomicInteger(cameras);
+	}
+
+	// Non-Blocking call
+	// Start (on = true) or stop the shutter on every camera together
+	public static GoProFuture<Result> trigger(final Map<String, GoProCamera> cameras, boolean on)
+	{
+		final GoProFuture<Result> future = new GoProFuture<Result>();
+		final GoProSyncShutter barrier = new GoProSyncShutter(cameras.size());
+		final Map<String, GoProFuture<Ack>> acks = new LinkedHashMap<String, GoProFuture<Ack>>();
+		final AtomicInteger outstanding = new AtomicInteger(cameras.size());
+		final long start = System.currentTimeMillis();
+
+		if(cameras.isEmpty())
+		{
+			future.complete(GoProResult.success(new Result(), GoProResult.NO_STATUS_CODE, 0));
+			return future;
+		}
+
+		for(Map.Entry<String, GoProCamera> entry : cameras.entrySet())
+		{
+			acks.put(entry.getKey(), entry.getValue().syncShutter(on, barrier));
+		}
+
+		for(GoProFuture<Ack> ack : acks.values())
+		{
+			ack.addListener(new GoProFuture.Listener<Ack>() {
+				@Override
+				public void onComplete(GoProResult<Ack> result)
+				{
+					if(outstanding.decrementAndGet() > 0)
+					{
+						return;
+					}
+
+					Result synced = new Result();
+					long earliest = Long.MAX_VALUE;
+					long latest = Long.MIN_VALUE;
+					int acknowledged = 0;
+
+					for(Map.Entry<String, GoProFuture<Ack>> done : acks.entrySet())
+					{
+						GoProResult<Ack> doneResult = done.getValue().getNow();
+						synced.acks.put(done.getKey(), doneResult);
+
+						if(doneResult.isSuccess())
+						{
+							earliest = Math.min(earliest, doneResult.getValue().acknowledged);
+							latest = Math.max(latest, doneResult.getValue().acknowledged);
+							acknowledged++;
+						}
+					}
+
+					if(acknowledged > 1)
+					{
+						synced.skew = latest - earliest;
+					}
+
+					future.complete(GoProResult.success(synced, GoProResult.NO_STATUS_CODE, System.currentTimeMillis() - start));
+				}
+			});
+		}
+
+		return future;
+	}
+
+	// A camera has armed, or given up arming. The last one releases them all.
+	public void arrive()
+	{
+		if(m_arming.decrementAndGet() == 0)
+		{
+			release();
+		}
+	}
+
+	// Blocking call
+	// Wait for the release. If a camera is taking too long to arm, the others go without it.
+	public void await() throws InterruptedException
+	{
+		if(!m_release.await(ARM_TIMEOUT, TimeUnit.MILLISECONDS))
+		{
+			release();
+		}
+	}
+
+	private synchronized void release()
+	{
+		if(m_release.getCount() > 0)
+		{
+			m_releaseTime = System.currentTimeMillis();
+			m_release.countDown();
+		}
+	}
+
+	// When the cameras were released, 0 until they have been
+	public long getReleaseTime()
+	{
+		return m_releaseTime;
+	}
+}
@@ -0,0 +1,613 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview Non-blocking HTTP client, drives requests to any number of cameras from one selector thread.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import android.util.Log;
+
+public class HttpAsyncClient implements Runnable
+{
+	private static String TAG = "HttpAsyncClient";
+
+	public static long IDLE_TIMEOUT = 10000;
+
+	// Callbacks are run on the I/O thread, they must return quickly and never block
+	public interface Callback
+	{
+		void onResponse(HttpResponse response);
+		void onFailure(IOException error);
+	}
+
+	// One or more pipelined requests in flight on a single channel
+	private static class Exchange
+	{
+		public String host;
+		public int port;
+		public byte[][] requests;
+		public HttpFuture[] futures;
+		public int next = 0; // Index of the response currently being read
+		public ByteBuffer request;
+		public long deadline;
+		public SocketChannel channel;
+		public boolean reused = false;
+		public boolean forceNewChannel = false;
+		public HttpResponseParser parser = new HttpResponseParser();
+	}
+
+	// A keep-alive channel waiting for the next request to its host
+	private static class IdleChannel
+	{
+		public SocketChannel channel;
+		public long since;
+	}
+
+	private static HttpAsyncClient s_instance;
+
+	private volatile Selector m_selector; // null until the I/O thread is started
+	private Thread m_thread;
+	private ConcurrentLinkedQueue<Exchange> m_submitted = new ConcurrentLinkedQueue<Exchange>();
+
+	// Only touched on the I/O thread
+	private LinkedList<Exchange> m_active = new LinkedList<Exchange>();
+	private Map<String, LinkedList<IdleChannel>> m_idle = new HashMap<String, LinkedList<IdleChannel>>();
+	private ByteBuffer m_readBuffer = ByteBuffer.allocate(4096);
+
+	// Shared by all cameras
+	public static synchronized HttpAsyncClient getInstance()
+	{
+		if(s_instance == null)
+		{
+			s_instance = new HttpAsyncClient();
+		}
+
+		return s_instance;
+	}
+
+	// Non-Blocking call
+	// Send a GET request for the url, the callback (which may be null) and the
+	// returned future are both completed when the response arrives.
+	public HttpFuture get(String url, int timeout, Callback callback)
+	{
+		return pipeline(new String[] { url }, timeout, new Callback[] { callback })[0];
+	}
+
+	// Non-Blocking call
+	// Send GET requests for all the urls back to back on one connection, they must all
+	// be for the same camera. Responses arrive in order, each completing its own future
+	// and callback (callbacks may be null). If the camera drops the connection part way
+	// through, the unanswered requests are re-sent concurrently on their own connections.
+	public HttpFuture[] pipeline(String[] urls, int timeout, Callback[] callbacks)
+	{
+		HttpFuture[] futures = new HttpFuture[urls.length];
+		for(int i = 0; i < urls.length; ++i)
+		{
+			futures[i] = new HttpFuture(callbacks != null ? callbacks[i] : null);
+		}
+
+		try
+		{
+			URL firstUrl = new URL(urls[0]);
+			String host = firstUrl.getHost();
+			int port = HttpUtils.getPort(firstUrl);
+
+			byte[][] requests = new byte[urls.length][];
+			for(int i = 0; i < urls.length; ++i)
+			{
+				URL requestUrl = new URL(urls[i]);
+				if(!requestUrl.getHost().equals(host) || HttpUtils.getPort(requestUrl) != port)
+				{
+					throw new IOException("Pipelined requests must all be for " + host + ":" + port);
+				}
+
+				requests[i] = HttpUtils.makeGetRequest(requestUrl);
+			}
+
+			submit(makeExchange(host, port, requests, futures, timeout));
+		}
+		catch(IOException e)
+		{
+			for(HttpFuture future : futures)
+			{
+				future.fail(e);
+			}
+		}
+
+		return futures;
+	}
+
+	private static Exchange makeExchange(String host, int port, byte[][] requests, HttpFuture[] futures, int timeout)
+	{
+		Exchange exchange = new Exchange();
+		exchange.host = host;
+		exchange.port = port;
+		exchange.requests = requests;
+		exchange.futures = futures;
+		exchange.deadline = (timeout > 0) ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+
+		// All requests go out in a single write
+		int length = 0;
+		for(byte[] request : requests)
+		{
+			length += request.length;
+		}
+
+		exchange.request = ByteBuffer.allocate(length);
+		for(byte[] request : requests)
+		{
+			exchange.request.put(request);
+		}
+		exchange.request.flip();
+
+		return exchange;
+	}
+
+	private void submit(Exchange exchange) throws IOException
+	{
+		ensureStarted();
+
+		m_submitted.add(exchange);
+		m_selector.wakeup();
+	}
+
+	private synchronized void ensureStarted() throws IOException
+	{
+		if(m_thread == null)
+		{
+			m_selector = Selector.open();
+
+			m_thread = new Thread(this, TAG);
+			m_thread.setDaemon(true);
+			m_thread.start();
+		}
+	}
+
+	@Override
+	public void run()
+	{
+		Selector selector = m_selector;
+
+		// Runs for the life of the process, the thread is a daemon
+		while(true)
+		{
+			try
+			{
+				startSubmitted();
+
+				selector.select(getSelectTimeout());
+
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while(it.hasNext())
+				{
+					SelectionKey key = it.next();
+					it.remove();
+
+					Exchange exchange = (Exchange)key.attachment();
+					if(exchange == null || !key.isValid())
+					{
+						continue;
+					}
+
+					try
+					{
+						handleReady(key, exchange);
+					}
+					catch(IOException e)
+					{
+						failOrRetry(exchange, e);
+					}
+				}
+
+				expireTimedOut();
+				evictIdle();
+			}
+			catch(Exception e)
+			{
+				Log.e(TAG, "I/O loop", e);
+			}
+		}
+	}
+
+	private void startSubmitted()
+	{
+		Exchange exchange;
+		while((exchange = m_submitted.poll()) != null)
+		{
+			try
+			{
+				start(exchange);
+			}
+			catch(IOException e)
+			{
+				failOrRetry(exchange, e);
+			}
+		}
+	}
+
+	private void start(Exchange exchange) throws IOException
+	{
+		if(isCancelled(exchange))
+		{
+			exchange.parser.release();
+			return;
+		}
+
+		m_active.add(exchange);
+
+		IdleChannel idle = exchange.forceNewChannel ? null : takeIdle(makeKey(exchange.host, exchange.port));
+		if(idle != null)
+		{
+			exchange.channel = idle.channel;
+			exchange.reused = true;
+
+			SelectionKey key = exchange.channel.keyFor(m_selector);
+			key.attach(exchange);
+			key.interestOps(SelectionKey.OP_WRITE);
+		}
+		else
+		{
+			exchange.channel = SocketChannel.open();
+			exchange.channel.configureBlocking(false);
+			exchange.channel.socket().setTcpNoDelay(true);
+
+			boolean connected = exchange.channel.connect(new InetSocketAddress(exchange.host, exchange.port));
+			exchange.channel.register(m_selector, connected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, exchange);
+		}
+	}
+
+	private void handleReady(SelectionKey key, Exchange exchange) throws IOException
+	{
+		if(key.isConnectable())
+		{
+			if(exchange.channel.finishConnect())
+			{
+				key.interestOps(SelectionKey.OP_WRITE);
+			}
+		}
+		else if(key.isWritable())
+		{
+			exchange.channel.write(exchange.request);
+
+			if(!exchange.request.hasRemaining())
+			{
+				key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+		else if(key.isReadable())
+		{
+			m_readBuffer.clear();
+			int read = exchange.channel.read(m_readBuffer);
+			m_readBuffer.flip();
+
+			if(read < 0)
+			{
+				// Only valid if the body was being read until close
+				exchange.parser.endOfStream();
+				onResponse(exchange, exchange.parser.getResponse(), false);
+				return;
+			}
+
+			while(exchange.parser.feed(m_readBuffer))
+			{
+				HttpResponse response = exchange.parser.getResponse();
+
+				// Anything left over after the last response is unsolicited, don't trust the channel again
+				boolean last = (exchange.next == exchange.futures.length - 1);
+				boolean canReuse = response.isKeepAlive() && !(last && m_readBuffer.hasRemaining());
+
+				if(!onResponse(exchange, response, canReuse))
+				{
+					break;
+				}
+			}
+		}
+	}
+
+	// Complete the next future in the exchange with the response. Returns true if the
+	// exchange is still waiting for more responses on the same channel.
+	private boolean onResponse(Exchange exchange, HttpResponse response, boolean canReuse)
+	{
+		HttpFuture future = exchange.futures[exchange.next++];
+		boolean more = exchange.next < exchange.futures.length;
+
+		if(more && canReuse)
+		{
+			exchange.parser.reset();
+		}
+		else
+		{
+			exchange.parser.release();
+			m_active.remove(exchange);
+
+			if(!more && canReuse)
+			{
+				park(exchange);
+			}
+			else
+			{
+				close(exchange.channel);
+			}
+
+			if(more)
+			{
+				// The camera closed the connection mid-pipeline
+				resubmitRemaining(exchange);
+			}
+		}
+
+		try
+		{
+			future.complete(response);
+		}
+		catch(Exception e)
+		{
+			Log.e(TAG, "Response callback failed", e);
+		}
+
+		return more && canReuse;
+	}
+
+	// Re-send each unanswered request of a broken pipeline on its own connection
+	private void resubmitRemaining(Exchange exchange)
+	{
+		long timeout = exchange.deadline - System.currentTimeMillis();
+
+		for(int i = exchange.next; i < exchange.futures.length; ++i)
+		{
+			if(timeout <= 0)
+			{
+				failFuture(exchange.futures[i], new SocketTimeoutException("Request to " + exchange.host + " timed out"));
+				continue;
+			}
+
+			Exchange single = makeExchange(exchange.host, exchange.port, new byte[][] { exchange.requests[i] }, new HttpFuture[] { exchange.futures[i] }, (int)Math.min(timeout, Integer.MAX_VALUE));
+			single.deadline = exchange.deadline;
+
+			try
+			{
+				start(single);
+			}
+			catch(IOException e)
+			{
+				failOrRetry(single, e);
+			}
+		}
+	}
+
+	// A reused keep-alive channel may have been closed by the camera while idle,
+	// if nothing has been received yet retry once on a fresh channel. If the channel
+	// broke after some pipelined responses arrived, re-send the rest individually.
+	private void failOrRetry(Exchange exchange, IOException error)
+	{
+		m_active.remove(exchange);
+		close(exchange.channel);
+
+		if(exchange.next > 0 && !isCancelled(exchange))
+		{
+			exchange.parser.release();
+			resubmitRemaining(exchange);
+			return;
+		}
+
+		if(exchange.reused && !exchange.parser.hasReceivedData() && !isCancelled(exchange))
+		{
+			exchange.reused = false;
+			exchange.forceNewChannel = true;
+			exchange.channel = null;
+			exchange.request.rewind();
+			exchange.parser.reset();
+
+			try
+			{
+				start(exchange);
+				return;
+			}
+			catch(IOException e)
+			{
+				m_active.remove(exchange);
+				close(exchange.channel);
+				error = e;
+			}
+		}
+
+		failRemaining(exchange, error);
+	}
+
+	private void failRemaining(Exchange exchange, IOException error)
+	{
+		exchange.parser.release();
+
+		for(int i = exchange.next; i < exchange.futures.length; ++i)
+		{
+			failFuture(exchange.futures[i], error);
+		}
+	}
+
+	private static void failFuture(HttpFuture future, IOException error)
+	{
+		try
+		{
+			future.fail(error);
+		}
+		catch(Exception e)
+		{
+			Log.e(TAG, "Failure callback failed", e);
+		}
+	}
+
+	// True if nobody is waiting for the outstanding responses any more
+	private static boolean isCancelled(Exchange exchange)
+	{
+		for(int i = exchange.next; i < exchange.futures.length; ++i)
+		{
+			if(!exchange.futures[i].isCancelled())
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private void expireTimedOut()
+	{
+		long now = System.currentTimeMillis();
+
+		Iterator<Exchange> it = m_active.iterator();
+		while(it.hasNext())
+		{
+			Exchange exchange = it.next();
+
+			if(isCancelled(exchange))
+			{
+				it.remove();
+				close(exchange.channel);
+				exchange.parser.release();
+			}
+			else if(now >= exchange.deadline)
+			{
+				it.remove();
+				close(exchange.channel);
+
+				failRemaining(exchange, new SocketTimeoutException("Request to " + exchange.host + " timed out"));
+			}
+		}
+	}
+
+	private void park(Exchange exchange)
+	{
+		SelectionKey key = exchange.channel.keyFor(m_selector);
+		key.attach(null);
+		key.interestOps(0);
+
+		IdleChannel idle = new IdleChannel();
+		idle.channel = exchange.channel;
+		idle.since = System.currentTimeMillis();
+
+		String hostKey = makeKey(exchange.host, exchange.port);
+		LinkedList<IdleChannel> channels = m_idle.get(hostKey);
+		if(channels == null)
+		{
+			channels = new LinkedList<IdleChannel>();
+			m_idle.put(hostKey, channels);
+		}
+		channels.addFirst(idle);
+	}
+
+	private IdleChannel takeIdle(String hostKey)
+	{
+		LinkedList<IdleChannel> channels = m_idle.get(hostKey);
+
+		while(channels != null && !channels.isEmpty())
+		{
+			IdleChannel idle = channels.removeFirst();
+			if(idle.channel.isOpen() && idle.channel.isConnected())
+			{
+				return idle;
+			}
+			close(idle.channel);
+		}
+
+		return null;
+	}
+
+	private void evictIdle()
+	{
+		long now = System.currentTimeMillis();
+
+		for(LinkedList<IdleChannel> channels : m_idle.values())
+		{
+			Iterator<IdleChannel> it = channels.iterator();
+			while(it.hasNext())
+			{
+				IdleChannel idle = it.next();
+				if(now - idle.since > IDLE_TIMEOUT)
+				{
+					close(idle.channel);
+					it.remove();
+				}
+			}
+		}
+	}
+
+	// How long the selector can sleep before a deadline or idle eviction is due, 0 = forever
+	private long getSelectTimeout()
+	{
+		long now = System.currentTimeMillis();
+		long next = Long.MAX_VALUE;
+
+		for(Exchange exchange : m_active)
+		{
+			next = Math.min(next, exchange.deadline);
+		}
+
+		for(LinkedList<IdleChannel> channels : m_idle.values())
+		{
+			for(IdleChannel idle : channels)
+			{
+				next = Math.min(next, idle.since + IDLE_TIMEOUT);
+			}
+		}
+
+		if(next == Long.MAX_VALUE)
+		{
+			return 0;
+		}
+
+		return Math.max(1, next - now);
+	}
+
+	private static void close(SocketChannel channel)
+	{
+		if(channel != null)
+		{
+			try
+			{
+				channel.close();
+			}
+			catch(IOException e)
+			{
+				Log.e(TAG, "Error closing channel", e);
+			}
+		}
+	}
+
+	private static String makeKey(String host, int port)
+	{
+		return host + ":" + port;
+	}
+}
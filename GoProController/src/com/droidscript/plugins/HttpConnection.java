@@ -0,0 +1,187 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview A persistent HTTP/1.1 connection to a camera, owned by the HttpConnectionPool.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+import android.util.Log;
+
+public class HttpConnection
+{
+	private static String TAG = "HttpConnection";
+
+	private String m_host;
+	private int m_port;
+	private Socket m_socket;
+	private InputStream m_in;
+	private OutputStream m_out;
+	private long m_lastUsed;
+	private boolean m_reused = false;
+	private HttpResponseParser m_parser = new HttpResponseParser();
+
+	// Received bytes not yet consumed by the parser, kept in read mode
+	private ByteBuffer m_buffer = ByteBuffer.allocate(1024);
+
+	public HttpConnection(String host, int port, int connectTimeout) throws IOException
+	{
+		m_host = host;
+		m_port = port;
+
+		m_socket = new Socket();
+		m_socket.setTcpNoDelay(true); // Commands are tiny, don't wait to coalesce them
+		m_socket.setKeepAlive(true);
+		m_socket.connect(new InetSocketAddress(host, port), connectTimeout);
+
+		m_in = m_socket.getInputStream();
+		m_out = m_socket.getOutputStream();
+		m_lastUsed = System.currentTimeMillis();
+		m_buffer.flip();
+	}
+
+	public String getHost()
+	{
+		return m_host;
+	}
+
+	public int getPort()
+	{
+		return m_port;
+	}
+
+	public long getLastUsed()
+	{
+		return m_lastUsed;
+	}
+
+	// True if this connection has already carried at least one request
+	public boolean isReused()
+	{
+		return m_reused;
+	}
+
+	public void markReused()
+	{
+		m_reused = true;
+	}
+
+	// Health check used before a pooled connection is handed out again, it never blocks.
+	// A socket the camera has quietly closed can't be spotted without blocking, that's
+	// left to the idle timeout and to the retry when a reused connection fails in HttpUtils.
+	public boolean isHealthy()
+	{
+		if(m_socket.isClosed() || m_socket.isInputShutdown() || m_socket.isOutputShutdown())
+		{
+			return false;
+		}
+
+		// Unsolicited data, the stream is out of step with our requests
+		if(m_buffer.hasRemaining())
+		{
+			return false;
+		}
+
+		try
+		{
+			return m_in.available() == 0;
+		}
+		catch(IOException e)
+		{
+			return false;
+		}
+	}
+
+	public void writeRequest(byte[] request) throws IOException
+	{
+		// Requests are a few hundred bytes at most, they always fit in the socket's
+		// send buffer so the write can't stall waiting for the camera
+		m_out.write(request);
+		m_out.flush();
+	}
+
+	// Blocking call
+	// Read a single response from the connection, giving up with a SocketTimeoutException
+	// if it hasn't completely arrived by the deadline (0 = no deadline). Any bytes read
+	// past the end of the response are kept for the next call.
+	public HttpResponse readResponse(long deadline) throws IOException
+	{
+		m_parser.reset();
+
+		if(deadline <= 0)
+		{
+			m_socket.setSoTimeout(0);
+		}
+
+		while(!m_parser.feed(m_buffer))
+		{
+			if(deadline > 0)
+			{
+				// The read timeout is per read, so shrink it as the deadline approaches
+				// to stop a camera that trickles bytes from holding us past it
+				long remaining = deadline - System.currentTimeMillis();
+				if(remaining <= 0)
+				{
+					throw new SocketTimeoutException("Response from " + m_host + " timed out");
+				}
+				m_socket.setSoTimeout((int)Math.min(remaining, Integer.MAX_VALUE));
+			}
+
+			m_buffer.compact();
+			int read = m_in.read(m_buffer.array(), m_buffer.arrayOffset() + m_buffer.position(), m_buffer.remaining());
+			if(read < 0)
+			{
+				m_buffer.flip();
+				m_parser.endOfStream();
+				break;
+			}
+
+			m_buffer.position(m_buffer.position() + read);
+			m_buffer.flip();
+		}
+
+		m_lastUsed = System.currentTimeMillis();
+
+		return m_parser.getResponse();
+	}
+
+	public void close()
+	{
+		m_parser.release();
+
+		try
+		{
+			m_socket.close();
+		}
+		catch(IOException e)
+		{
+			Log.e(TAG, "Error closing socket", e);
+		}
+	}
+}
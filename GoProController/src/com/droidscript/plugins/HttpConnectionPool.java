@@ -0,0 +1,298 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview Keep-alive connection pool, one set of sockets per camera.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+import android.util.Log;
+
+public class HttpConnectionPool
+{
+	private static String TAG = "HttpConnectionPool";
+
+	public static int DEFAULT_MAX_CONNECTIONS_PER_HOST = 2;
+	public static long DEFAULT_IDLE_TIMEOUT = 10000;
+
+	// Connections for a single camera
+	private static class HostPool
+	{
+		// Most recently used connection at the front
+		public LinkedList<HttpConnection> idle = new LinkedList<HttpConnection>();
+		public int leased = 0;
+	}
+
+	private Map<String, HostPool> m_hosts = new HashMap<String, HostPool>();
+	private int m_maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+	private long m_idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+	// Closes idle connections on the shared timer while there are any
+	private GoProScheduler.Registration m_sweeper;
+	private boolean m_sweepScheduled = false;
+
+	public synchronized void setMaxConnectionsPerHost(int maxConnections)
+	{
+		m_maxConnectionsPerHost = Math.max(1, maxConnections);
+		notifyAll();
+	}
+
+	public synchronized int getMaxConnectionsPerHost()
+	{
+		return m_maxConnectionsPerHost;
+	}
+
+	public synchronized void setIdleTimeout(long idleTimeout)
+	{
+		m_idleTimeout = idleTimeout;
+	}
+
+	// Blocking call
+	// Hand out a healthy idle connection to the host, or open a new one.
+	// If the host already has the maximum number of connections open, wait
+	// for one to be released. connectTimeout covers both the wait and the connect.
+	public HttpConnection acquire(String host, int port, int connectTimeout) throws IOException
+	{
+		String key = makeKey(host, port);
+		long deadline = System.currentTimeMillis() + (connectTimeout > 0 ? connectTimeout : Long.MAX_VALUE / 2);
+		HttpConnection idle = null;
+
+		synchronized(this)
+		{
+			HostPool pool = getHostPool(key);
+
+			while(true)
+			{
+				evictIdle(pool, System.currentTimeMillis());
+
+				// Reserve the slot, then check or connect outside the lock
+				if(!pool.idle.isEmpty())
+				{
+					idle = pool.idle.removeFirst();
+					pool.leased++;
+					break;
+				}
+
+				if(pool.leased < m_maxConnectionsPerHost)
+				{
+					pool.leased++;
+					break;
+				}
+
+				long remaining = deadline - System.currentTimeMillis();
+				if(remaining <= 0)
+				{
+					throw new SocketTimeoutException("Timed out waiting for a connection to " + key);
+				}
+
+				try
+				{
+					wait(remaining);
+				}
+				catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted waiting for a connection to " + key);
+				}
+			}
+		}
+
+		if(idle != null)
+		{
+			if(idle.isHealthy())
+			{
+				idle.markReused();
+				return idle;
+			}
+
+			// Open a fresh connection in its slot
+			idle.close();
+		}
+
+		try
+		{
+			// Only what's left of the timeout after any wait for a free slot
+			int remaining = 0;
+			if(connectTimeout > 0)
+			{
+				remaining = (int)Math.max(1, deadline - System.currentTimeMillis());
+			}
+
+			return new HttpConnection(host, port, remaining);
+		}
+		catch(IOException e)
+		{
+			synchronized(this)
+			{
+				getHostPool(key).leased--;
+				notifyAll();
+			}
+			throw e;
+		}
+	}
+
+	// Return a connection to the pool. Connections that can't carry another
+	// request (error, Connection: close) must be released with reusable = false.
+	public void release(HttpConnection connection, boolean reusable)
+	{
+		String key = makeKey(connection.getHost(), connection.getPort());
+
+		synchronized(this)
+		{
+			HostPool pool = getHostPool(key);
+			pool.leased--;
+
+			if(reusable && pool.idle.size() + pool.leased < m_maxConnectionsPerHost)
+			{
+				pool.idle.addFirst(connection);
+				connection = null;
+				scheduleSweep();
+			}
+
+			notifyAll();
+		}
+
+		if(connection != null)
+		{
+			connection.close();
+		}
+	}
+
+	// Close any connections that have been idle for longer than the idle timeout,
+	// and forget hosts with no connections left. Returns true if any are still idle.
+	public synchronized boolean evictIdle()
+	{
+		long now = System.currentTimeMillis();
+		boolean idle = false;
+
+		Iterator<HostPool> it = m_hosts.values().iterator();
+		while(it.hasNext())
+		{
+			HostPool pool = it.next();
+			evictIdle(pool, now);
+
+			if(!pool.idle.isEmpty())
+			{
+				idle = true;
+			}
+			else if(pool.leased == 0)
+			{
+				it.remove();
+			}
+		}
+
+		return idle;
+	}
+
+	// Close all idle connections to the host. Leased connections are left
+	// open, and go back to the pool as usual when they are released.
+	public synchronized void closeIdle(String host, int port)
+	{
+		String key = makeKey(host, port);
+		HostPool pool = m_hosts.get(key);
+
+		if(pool != null)
+		{
+			for(HttpConnection connection : pool.idle)
+			{
+				connection.close();
+			}
+			pool.idle.clear();
+
+			if(pool.leased == 0)
+			{
+				m_hosts.remove(key);
+			}
+		}
+	}
+
+	// Sweep the pool once the idle timeout has passed, unless a sweep is already due.
+	// Called with the lock held.
+	private void scheduleSweep()
+	{
+		if(m_sweepScheduled)
+		{
+			return;
+		}
+
+		if(m_sweeper == null)
+		{
+			m_sweeper = GoProScheduler.getInstance().register();
+		}
+
+		m_sweepScheduled = m_sweeper.schedule(new Runnable() {
+			@Override
+			public void run()
+			{
+				sweep();
+			}
+		}, Math.max(1, m_idleTimeout));
+	}
+
+	private synchronized void sweep()
+	{
+		m_sweepScheduled = false;
+
+		if(evictIdle())
+		{
+			scheduleSweep();
+		}
+	}
+
+	private void evictIdle(HostPool pool, long now)
+	{
+		Iterator<HttpConnection> it = pool.idle.iterator();
+		while(it.hasNext())
+		{
+			HttpConnection connection = it.next();
+			if(now - connection.getLastUsed() > m_idleTimeout)
+			{
+				Log.d(TAG, "Evicting idle connection to " + connection.getHost());
+				connection.close();
+				it.remove();
+			}
+		}
+	}
+
+	private HostPool getHostPool(String key)
+	{
+		HostPool pool = m_hosts.get(key);
+		if(pool == null)
+		{
+			pool = new HostPool();
+			m_hosts.put(key, pool);
+		}
+
+		return pool;
+	}
+
+	private static String makeKey(String host, int port)
+	{
+		return host + ":" + port;
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview The pending result of a request made through HttpAsyncClient.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class HttpFuture implements Future<HttpResponse>
+{
+	private CountDownLatch m_done = new CountDownLatch(1);
+	private HttpAsyncClient.Callback m_callback;
+	private HttpResponse m_response;
+	private IOException m_error;
+	private boolean m_cancelled = false;
+
+	public HttpFuture(HttpAsyncClient.Callback callback)
+	{
+		m_callback = callback;
+	}
+
+	// Called from the I/O thread when the response has arrived
+	void complete(HttpResponse response)
+	{
+		synchronized(this)
+		{
+			if(isDone())
+			{
+				// Cancelled, nobody will release it
+				response.release();
+				return;
+			}
+			m_response = response;
+			m_done.countDown();
+		}
+
+		if(m_callback != null)
+		{
+			m_callback.onResponse(response);
+		}
+	}
+
+	// Called from the I/O thread when the request has failed
+	void fail(IOException error)
+	{
+		synchronized(this)
+		{
+			if(isDone())
+			{
+				return;
+			}
+			m_error = error;
+			m_done.countDown();
+		}
+
+		if(m_callback != null)
+		{
+			m_callback.onFailure(error);
+		}
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning)
+	{
+		synchronized(this)
+		{
+			if(isDone())
+			{
+				return false;
+			}
+			m_cancelled = true;
+			m_done.countDown();
+		}
+
+		return true;
+	}
+
+	@Override
+	public synchronized boolean isCancelled()
+	{
+		return m_cancelled;
+	}
+
+	@Override
+	public boolean isDone()
+	{
+		return m_done.getCount() == 0;
+	}
+
+	@Override
+	public HttpResponse get() throws InterruptedException, ExecutionException
+	{
+		m_done.await();
+		return getResult();
+	}
+
+	@Override
+	public HttpResponse get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+	{
+		if(!m_done.await(timeout, unit))
+		{
+			throw new TimeoutException();
+		}
+		return getResult();
+	}
+
+	private synchronized HttpResponse getResult() throws ExecutionException
+	{
+		if(m_cancelled)
+		{
+			throw new CancellationException();
+		}
+		if(m_error != null)
+		{
+			throw new ExecutionException(m_error);
+		}
+		return m_response;
+	}
+}
@@ -0,0 +1,92 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview A response read from a pooled HTTP connection.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+// The body is held in a buffer borrowed from the ByteBufferPool. Call release() once
+// finished with the response to return it, after which the body can't be read.
+public class HttpResponse
+{
+	private int m_statusCode;
+	private ByteBuffer m_body;
+	private boolean m_keepAlive;
+
+	// The body is read from the buffer's position to its limit
+	public HttpResponse(int statusCode, ByteBuffer body, boolean keepAlive)
+	{
+		m_statusCode = statusCode;
+		m_body = body;
+		m_keepAlive = keepAlive;
+	}
+
+	public int getStatusCode()
+	{
+		return m_statusCode;
+	}
+
+	public boolean isSuccess()
+	{
+		return m_statusCode >= 200 && m_statusCode < 300;
+	}
+
+	// True if the server has agreed to keep the connection open for another request
+	public boolean isKeepAlive()
+	{
+		return m_keepAlive;
+	}
+
+	public int getBodyLength()
+	{
+		return m_body.remaining();
+	}
+
+	// Point the view at the body without copying it, valid until release()
+	public UnsignedByteView getBodyView(UnsignedByteView view)
+	{
+		return view.wrap(m_body);
+	}
+
+	// A copy of the body
+	public byte[] getBody()
+	{
+		byte[] bytes = new byte[m_body.remaining()];
+		m_body.duplicate().get(bytes);
+		return bytes;
+	}
+
+	public String getBodyAsString() throws UnsupportedEncodingException
+	{
+		return new String(m_body.array(), m_body.arrayOffset() + m_body.position(), m_body.remaining(), "UTF-8");
+	}
+
+	// Return the body buffer to the pool
+	public void release()
+	{
+		ByteBufferPool.getInstance().release(m_body);
+		m_body = null;
+	}
+}
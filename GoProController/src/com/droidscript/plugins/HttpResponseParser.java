@@ -0,0 +1,453 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview Incremental HTTP/1.1 response parser, fed with whatever bytes have arrived.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Headers are matched byte by byte and the body is collected in a pooled buffer,
+// so parsing a typical status response doesn't allocate anything on the heap.
+public class HttpResponseParser
+{
+	private enum State
+	{
+		STATUS_LINE,
+		HEADERS,
+		BODY,
+		CHUNK_SIZE,
+		CHUNK_DATA,
+		CHUNK_END,
+		TRAILERS,
+		BODY_UNTIL_CLOSE,
+		DONE
+	}
+
+	private static final byte[] HTTP_PREFIX = { 'H', 'T', 'T', 'P', '/' };
+	private static final byte[] HTTP_1_1 = { 'H', 'T', 'T', 'P', '/', '1', '.', '1' };
+	private static final byte[] CONTENT_LENGTH = { 'c', 'o', 'n', 't', 'e', 'n', 't', '-', 'l', 'e', 'n', 'g', 't', 'h' };
+	private static final byte[] TRANSFER_ENCODING = { 't', 'r', 'a', 'n', 's', 'f', 'e', 'r', '-', 'e', 'n', 'c', 'o', 'd', 'i', 'n', 'g' };
+	private static final byte[] CONNECTION = { 'c', 'o', 'n', 'n', 'e', 'c', 't', 'i', 'o', 'n' };
+	private static final byte[] CHUNKED = { 'c', 'h', 'u', 'n', 'k', 'e', 'd' };
+	private static final byte[] CLOSE = { 'c', 'l', 'o', 's', 'e' };
+	private static final byte[] KEEP_ALIVE = { 'k', 'e', 'e', 'p', '-', 'a', 'l', 'i', 'v', 'e' };
+
+	private State m_state;
+	private byte[] m_line = new byte[256];
+	private int m_lineLength;
+	private boolean m_lineComplete;
+	private ByteBuffer m_body;
+	private int m_statusCode;
+	private boolean m_keepAlive;
+	private boolean m_chunked;
+	private int m_contentLength;
+	private int m_remaining;
+	private boolean m_receivedData;
+
+	public HttpResponseParser()
+	{
+		reset();
+	}
+
+	// Prepare to parse the next response on the connection
+	public void reset()
+	{
+		m_state = State.STATUS_LINE;
+		m_lineLength = 0;
+		m_lineComplete = false;
+		m_statusCode = 0;
+		m_keepAlive = false;
+		m_chunked = false;
+		m_contentLength = -1;
+		m_remaining = 0;
+		m_receivedData = false;
+
+		if(m_body == null)
+		{
+			m_body = ByteBufferPool.getInstance().acquire(0);
+		}
+		else
+		{
+			m_body.clear();
+		}
+	}
+
+	// Hand the body buffer back to the pool once no more responses will be parsed,
+	// reset() takes another if the parser is used again
+	public void release()
+	{
+		if(m_body != null)
+		{
+			ByteBufferPool.getInstance().release(m_body);
+			m_body = null;
+		}
+	}
+
+	// True once any part of the response has been seen
+	public boolean hasReceivedData()
+	{
+		return m_receivedData;
+	}
+
+	// Consume bytes from the buffer until the response is complete or the buffer is empty.
+	// Bytes after the end of the response are left in the buffer, they belong to the
+	// next pipelined response. Returns true when the response is complete.
+	public boolean feed(ByteBuffer buffer) throws IOException
+	{
+		if(buffer.hasRemaining())
+		{
+			m_receivedData = true;
+		}
+
+		while(m_state != State.DONE && buffer.hasRemaining())
+		{
+			switch(m_state)
+			{
+			case STATUS_LINE:
+				if(readLine(buffer))
+				{
+					parseStatusLine();
+					m_state = State.HEADERS;
+				}
+				break;
+			case HEADERS:
+				if(readLine(buffer))
+				{
+					if(m_lineLength > 0)
+					{
+						parseHeader();
+					}
+					else
+					{
+						startBody();
+					}
+				}
+				break;
+			case BODY:
+			case CHUNK_DATA:
+				{
+					int count = Math.min(m_remaining, buffer.remaining());
+					appendBody(buffer, count);
+					m_remaining -= count;
+
+					if(m_remaining == 0)
+					{
+						m_state = (m_state == State.BODY) ? State.DONE : State.CHUNK_END;
+					}
+				}
+				break;
+			case CHUNK_END:
+				if(readLine(buffer))
+				{
+					m_state = State.CHUNK_SIZE;
+				}
+				break;
+			case CHUNK_SIZE:
+				if(readLine(buffer))
+				{
+					m_remaining = parseChunkSize();
+					m_state = (m_remaining > 0) ? State.CHUNK_DATA : State.TRAILERS;
+				}
+				break;
+			case TRAILERS:
+				if(readLine(buffer) && m_lineLength == 0)
+				{
+					m_state = State.DONE;
+				}
+				break;
+			case BODY_UNTIL_CLOSE:
+				appendBody(buffer, buffer.remaining());
+				break;
+			default:
+				break;
+			}
+		}
+
+		return m_state == State.DONE;
+	}
+
+	// The connection has been closed by the camera
+	public void endOfStream() throws IOException
+	{
+		if(m_state == State.BODY_UNTIL_CLOSE)
+		{
+			m_state = State.DONE;
+		}
+		else if(m_state != State.DONE)
+		{
+			throw new EOFException(m_receivedData ? "Connection closed mid-response" : "Connection closed before response");
+		}
+	}
+
+	// Hands the body buffer over to the response, call once the response is complete
+	public HttpResponse getResponse()
+	{
+		ByteBuffer body = m_body;
+		body.flip();
+		m_body = null;
+
+		return new HttpResponse(m_statusCode, body, m_keepAlive);
+	}
+
+	private void appendBody(ByteBuffer buffer, int count)
+	{
+		if(m_body.remaining() < count)
+		{
+			// Unusually large response, move to a bigger buffer
+			ByteBuffer larger = ByteBufferPool.getInstance().acquire(Math.max(m_body.capacity() * 2, m_body.position() + count));
+			m_body.flip();
+			larger.put(m_body);
+			ByteBufferPool.getInstance().release(m_body);
+			m_body = larger;
+		}
+
+		m_body.put(buffer.array(), buffer.arrayOffset() + buffer.position(), count);
+		buffer.position(buffer.position() + count);
+	}
+
+	// Accumulate a CRLF (or LF) terminated line into m_line, returns true once complete.
+	// A line spanning two buffers is carried over until its terminator arrives.
+	private boolean readLine(ByteBuffer buffer)
+	{
+		if(m_lineComplete)
+		{
+			m_lineLength = 0;
+			m_lineComplete = false;
+		}
+
+		while(buffer.hasRemaining())
+		{
+			byte b = buffer.get();
+			if(b == '\n')
+			{
+				if(m_lineLength > 0 && m_line[m_lineLength - 1] == '\r')
+				{
+					m_lineLength--;
+				}
+
+				m_lineComplete = true;
+				return true;
+			}
+
+			if(m_lineLength == m_line.length)
+			{
+				byte[] longer = new byte[m_line.length * 2];
+				System.arraycopy(m_line, 0, longer, 0, m_lineLength);
+				m_line = longer;
+			}
+			m_line[m_lineLength++] = b;
+		}
+
+		return false;
+	}
+
+	// HTTP/1.1 200 OK
+	private void parseStatusLine() throws IOException
+	{
+		if(!regionMatches(0, m_lineLength, HTTP_PREFIX, true))
+		{
+			throw malformed("Malformed status line");
+		}
+
+		int codeStart = indexOf(' ', 0, m_lineLength) + 1;
+		int codeEnd = indexOf(' ', codeStart, m_lineLength);
+		if(codeStart <= 0)
+		{
+			throw malformed("Malformed status line");
+		}
+		if(codeEnd < 0)
+		{
+			codeEnd = m_lineLength;
+		}
+
+		m_statusCode = parseInt(codeStart, codeEnd, 10);
+		if(m_statusCode < 0)
+		{
+			throw malformed("Malformed status line");
+		}
+
+		// HTTP/1.1 defaults to keep-alive, HTTP/1.0 has to ask for it
+		m_keepAlive = regionMatches(0, codeStart - 1, HTTP_1_1, false);
+	}
+
+	private void parseHeader() throws IOException
+	{
+		int colon = indexOf(':', 0, m_lineLength);
+		if(colon <= 0)
+		{
+			return;
+		}
+
+		int nameEnd = trimEnd(0, colon);
+		int valueStart = trimStart(colon + 1, m_lineLength);
+		int valueEnd = trimEnd(valueStart, m_lineLength);
+
+		if(regionMatches(0, nameEnd, CONTENT_LENGTH, false))
+		{
+			m_contentLength = parseInt(valueStart, valueEnd, 10);
+			if(m_contentLength < 0)
+			{
+				throw malformed("Malformed Content-Length");
+			}
+		}
+		else if(regionMatches(0, nameEnd, TRANSFER_ENCODING, false))
+		{
+			m_chunked = regionMatches(valueStart, valueEnd, CHUNKED, false);
+		}
+		else if(regionMatches(0, nameEnd, CONNECTION, false))
+		{
+			if(regionMatches(valueStart, valueEnd, CLOSE, false))
+			{
+				m_keepAlive = false;
+			}
+			else if(regionMatches(valueStart, valueEnd, KEEP_ALIVE, false))
+			{
+				m_keepAlive = true;
+			}
+		}
+	}
+
+	private void startBody()
+	{
+		if(m_chunked)
+		{
+			m_state = State.CHUNK_SIZE;
+		}
+		else if(m_contentLength > 0)
+		{
+			m_remaining = m_contentLength;
+			m_state = State.BODY;
+		}
+		else if(m_contentLength == 0)
+		{
+			m_state = State.DONE;
+		}
+		else
+		{
+			// No framing, the body ends when the camera closes the socket
+			m_keepAlive = false;
+			m_state = State.BODY_UNTIL_CLOSE;
+		}
+	}
+
+	private int parseChunkSize() throws IOException
+	{
+		// Ignore any chunk extensions
+		int end = indexOf(';', 0, m_lineLength);
+		if(end < 0)
+		{
+			end = m_lineLength;
+		}
+
+		int size = parseInt(trimStart(0, end), trimEnd(0, end), 16);
+		if(size < 0)
+		{
+			throw malformed("Malformed chunk size");
+		}
+
+		return size;
+	}
+
+	// Parse a non-negative number from m_line[start, end), returns -1 if it isn't one
+	private int parseInt(int start, int end, int radix)
+	{
+		if(start >= end)
+		{
+			return -1;
+		}
+
+		int value = 0;
+		for(int i = start; i < end; ++i)
+		{
+			int digit = Character.digit((char)m_line[i], radix);
+			if(digit < 0 || value > (Integer.MAX_VALUE - digit) / radix)
+			{
+				return -1;
+			}
+			value = value * radix + digit;
+		}
+
+		return value;
+	}
+
+	// Case-insensitive compare of m_line[start, end) with the expected bytes,
+	// if prefix is set the region only has to start with them
+	private boolean regionMatches(int start, int end, byte[] expected, boolean prefix)
+	{
+		int length = end - start;
+		if(prefix ? length < expected.length : length != expected.length)
+		{
+			return false;
+		}
+
+		for(int i = 0; i < expected.length; ++i)
+		{
+			if(Character.toLowerCase((char)m_line[start + i]) != Character.toLowerCase((char)expected[i]))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private int indexOf(char c, int start, int end)
+	{
+		for(int i = start; i < end; ++i)
+		{
+			if(m_line[i] == c)
+			{
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private int trimStart(int start, int end)
+	{
+		while(start < end && (m_line[start] == ' ' || m_line[start] == '\t'))
+		{
+			start++;
+		}
+
+		return start;
+	}
+
+	private int trimEnd(int start, int end)
+	{
+		while(end > start && (m_line[end - 1] == ' ' || m_line[end - 1] == '\t'))
+		{
+			end--;
+		}
+
+		return end;
+	}
+
+	private IOException malformed(String message)
+	{
+		return new IOException(message + ": " + new String(m_line, 0, m_lineLength));
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview Thrown when the camera answers a request with an error status.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+import java.io.IOException;
+
+public class HttpStatusException extends IOException
+{
+	private static final long serialVersionUID = 1L;
+
+	private int m_statusCode;
+
+	public HttpStatusException(int statusCode, String url)
+	{
+		super("HTTP " + statusCode + " for " + url);
+
+		m_statusCode = statusCode;
+	}
+
+	public int getStatusCode()
+	{
+		return m_statusCode;
+	}
+}
@@ -27,9 +27,14 @@ package com.droidscript.plugins;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -40,6 +45,17 @@ public class HttpUtils
 {
 	private static String TAG = "HttpUtils";
 	
+	// Used when a caller doesn't give a timeout, nothing waits on the camera forever
+	public static int DEFAULT_TIMEOUT = 5000;
+	
+	// Shared by all cameras, connections are pooled per camera ip address
+	private static HttpConnectionPool s_connectionPool = new HttpConnectionPool();
+	
+	public static HttpConnectionPool getConnectionPool()
+	{
+		return s_connectionPool;
+	}
+	
 	public static HttpURLConnection openHttpConnection(String url, int timeout) throws IOException
 	{
 		URL requestUrl = new URL(url);
@@ -49,44 +65,362 @@ public class HttpUtils
 		if(timeout > 0)
 		{
 			httpConnection.setConnectTimeout(timeout);
+			httpConnection.setReadTimeout(timeout);
 		}
 		
 		return httpConnection;
 	}
 	
-	public static void sendRequest(String url)
-	{		
-		InputStream is = null;
-		HttpURLConnection httpConnection = null;
+	// Blocking call
+	// Send a GET request over a pooled keep-alive connection and read the response.
+	// A reused connection may have been closed by the camera while it sat in the pool,
+	// if it fails the request is retried, ending up on a fresh connection at worst.
+	// The timeout is a deadline for the whole request, retries included: connecting,
+	// sending and reading must all be done within it or a SocketTimeoutException is thrown.
+	public static HttpResponse request(String url, int timeout) throws IOException
+	{
+		return request(url, getDeadline(timeout));
+	}
+	
+	private static HttpResponse request(String url, long deadline) throws IOException
+	{
+		URL requestUrl = new URL(url);
+		
+		return send(requestUrl.getHost(), getPort(requestUrl), makeGetRequest(requestUrl), deadline);
+	}
+	
+	// Blocking call
+	// Send a prepared raw request, such as one from a GoProCommandTable, and read the
+	// response. Otherwise the same as request().
+	public static HttpResponse send(String host, int port, byte[] request, int timeout) throws IOException
+	{
+		return send(host, port, request, getDeadline(timeout));
+	}
+	
+	private static HttpResponse send(String host, int port, byte[] request, long deadline) throws IOException
+	{
+		while(true)
+		{
+			HttpConnection connection = s_connectionPool.acquire(host, port, getRemaining(deadline, host));
+			boolean reused = connection.isReused();
+			boolean reusable = false;
+			
+			try
+			{
+				connection.writeRequest(request);
+				HttpResponse response = connection.readResponse(deadline);
+				reusable = response.isKeepAlive();
+				
+				return response;
+			}
+			catch(IOException e)
+			{
+				if(!reused || e instanceof SocketTimeoutException)
+				{
+					throw e;
+				}
+				
+				Log.d(TAG, "Stale pooled connection to " + host + ", retrying");
+			}
+			finally
+			{
+				s_connectionPool.release(connection, reusable);
+			}
+		}
+	}
+	
+	// Blocking call
+	// Send GET requests for all the urls back to back on one pooled connection and read
+	// the responses in order, so the whole batch costs a single round trip. The urls must
+	// all be for the same camera. If the camera closes the connection part way through,
+	// the unanswered requests are sent again one at a time. The timeout is a deadline
+	// for the whole batch.
+	public static HttpResponse[] requestPipelined(String[] urls, int timeout) throws IOException
+	{
+		long deadline = getDeadline(timeout);
+		
+		URL firstUrl = new URL(urls[0]);
+		String host = firstUrl.getHost();
+		int port = getPort(firstUrl);
+		
+		ByteArrayOutputStream requests = new ByteArrayOutputStream(urls.length * 64);
+		for(String url : urls)
+		{
+			URL requestUrl = new URL(url);
+			if(!requestUrl.getHost().equals(host) || getPort(requestUrl) != port)
+			{
+				throw new IOException("Pipelined requests must all be for " + host + ":" + port);
+			}
+			
+			requests.write(makeGetRequest(requestUrl));
+		}
+		
+		HttpResponse[] responses = new HttpResponse[urls.length];
+		int received = 0;
+		
+		HttpConnection connection = s_connectionPool.acquire(host, port, getRemaining(deadline, host));
+		boolean reusable = false;
 		
 		try
-        {
-			httpConnection = openHttpConnection(url, 0);
-        	is = httpConnection.getInputStream();
-        }
-        catch(Exception e)
-        {
-        	Log.e(TAG, "sendRequest", e);
-        }
-        finally
-        {
-        	if(is != null) 
-	        {
-	            try 
-	            { 
-	                is.close(); 
-	            } 
-	            catch (IOException e) 
-	            {
-	                Log.e(TAG, "Error closing InputStream", e);
-	            }
-	        }
-        	
-        	if(httpConnection != null)
-        	{
-        		httpConnection.disconnect();
-        	}
-        }
+		{
+			connection.writeRequest(requests.toByteArray());
+			
+			while(received < urls.length)
+			{
+				responses[received] = connection.readResponse(deadline);
+				
+				if(!responses[received++].isKeepAlive())
+				{
+					break;
+				}
+			}
+			
+			reusable = (received == urls.length) && responses[received - 1].isKeepAlive();
+		}
+		catch(SocketTimeoutException e)
+		{
+			for(int i = 0; i < received; ++i)
+			{
+				responses[i].release();
+			}
+			throw e;
+		}
+		catch(IOException e)
+		{
+			// A stale pooled connection fails before the first response, a camera that
+			// doesn't support pipelining fails after it. Either way fall back below.
+			Log.d(TAG, "Pipeline to " + host + " broken after " + received + " of " + urls.length + " responses");
+		}
+		finally
+		{
+			s_connectionPool.release(connection, reusable);
+		}
+		
+		boolean complete = false;
+		try
+		{
+			for(int i = received; i < urls.length; ++i)
+			{
+				responses[i] = request(urls[i], deadline);
+			}
+			
+			complete = true;
+			return responses;
+		}
+		finally
+		{
+			if(!complete)
+			{
+				// Hand back the buffers of the responses that did arrive
+				for(int i = 0; i < urls.length && responses[i] != null; ++i)
+				{
+					responses[i].release();
+				}
+			}
+		}
+	}
+	
+	private static long getDeadline(int timeout)
+	{
+		return System.currentTimeMillis() + (timeout > 0 ? timeout : DEFAULT_TIMEOUT);
+	}
+	
+	// Time left before the deadline, throws once it has passed
+	private static int getRemaining(long deadline, String host) throws SocketTimeoutException
+	{
+		long remaining = deadline - System.currentTimeMillis();
+		if(remaining <= 0)
+		{
+			throw new SocketTimeoutException("Request to " + host + " timed out");
+		}
+		
+		return (int)Math.min(remaining, Integer.MAX_VALUE);
+	}
+	
+	// The raw bytes of a keep-alive GET request for the url
+	public static byte[] makeGetRequest(URL url) throws UnsupportedEncodingException
+	{
+		String file = url.getFile();
+		if(file.length() == 0)
+		{
+			file = "/";
+		}
+		
+		return makeGetRequest(url.getHost(), file);
+	}
+	
+	// file is the path and query, e.g. /camera/se?t=password
+	public static byte[] makeGetRequest(String host, String file) throws UnsupportedEncodingException
+	{
+		return ("GET " + file + " HTTP/1.1\r\n" +
+				"Host: " + host + "\r\n" +
+				"Connection: keep-alive\r\n" +
+				"\r\n").getBytes("ISO-8859-1");
+	}
+	
+	public static int getPort(URL url)
+	{
+		return url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+	}
+	
+	// Blocking call
+	// Request the url, throws if the camera responds with an error status.
+	// Call release() on the response once finished with it.
+	public static HttpResponse requestSuccessful(String url, int timeout) throws IOException
+	{
+		return checkSuccessful(request(url, timeout), url);
+	}
+	
+	// Throws an HttpStatusException (after releasing the response) if the camera responded with an error status
+	public static HttpResponse checkSuccessful(HttpResponse response, String url) throws HttpStatusException
+	{
+		if(!response.isSuccess())
+		{
+			response.release();
+			throw new HttpStatusException(response.getStatusCode(), url);
+		}
+		
+		return response;
+	}
+	
+	// Blocking call
+	// Hedged GET for idempotent requests: if no response has arrived after hedgeDelay, a
+	// duplicate request is sent on another connection and whichever response arrives first
+	// is returned. A request lost to a dropped packet then costs hedgeDelay rather than the
+	// whole timeout. Both requests share the timeout, a failure is only thrown once both
+	// have failed. Must not be used for commands, the camera may see them twice.
+	public static HttpResponse requestHedged(String url, int timeout, long hedgeDelay) throws IOException
+	{
+		long deadline = getDeadline(timeout);
+		
+		// Released once for every request that completes, successfully or not
+		final Semaphore completed = new Semaphore(0);
+		HttpAsyncClient.Callback signal = new HttpAsyncClient.Callback() {
+			@Override
+			public void onResponse(HttpResponse response)
+			{
+				completed.release();
+			}
+			
+			@Override
+			public void onFailure(IOException error)
+			{
+				completed.release();
+			}
+		};
+		
+		HttpAsyncClient client = HttpAsyncClient.getInstance();
+		HttpFuture first = client.get(url, getRemaining(deadline, url), signal);
+		HttpFuture hedge = null;
+		
+		try
+		{
+			// Give the first request until hedgeDelay to answer on its own
+			if(completed.tryAcquire(Math.max(0, Math.min(hedgeDelay, deadline - System.currentTimeMillis())), TimeUnit.MILLISECONDS))
+			{
+				completed.release(); // Leave it for the loop below
+			}
+			else
+			{
+				hedge = client.get(url, getRemaining(deadline, url), signal);
+			}
+			
+			int pending = (hedge != null) ? 2 : 1;
+			IOException error = null;
+			
+			while(pending-- > 0)
+			{
+				if(!completed.tryAcquire(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS))
+				{
+					throw new SocketTimeoutException("Request to " + url + " timed out");
+				}
+				
+				HttpFuture done = (first != null && first.isDone()) ? first : hedge;
+				if(done == first)
+				{
+					first = null;
+				}
+				else
+				{
+					hedge = null;
+				}
+				
+				try
+				{
+					return done.get();
+				}
+				catch(ExecutionException e)
+				{
+					error = (e.getCause() instanceof IOException) ? (IOException)e.getCause() : new IOException(e.getCause().toString());
+				}
+			}
+			
+			throw error;
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for " + url);
+		}
+		finally
+		{
+			// Stop waiting for the loser, if it has already arrived give its buffer back
+			cancelOrRelease(first);
+			cancelOrRelease(hedge);
+		}
+	}
+	
+	// Finished with a request that may still be in flight, return its response to the pool if it has one
+	public static void cancelOrRelease(HttpFuture future)
+	{
+		if(future == null || future.cancel(false))
+		{
+			return;
+		}
+		
+		try
+		{
+			HttpResponse response = future.get();
+			if(response != null)
+			{
+				response.release();
+			}
+		}
+		catch(Exception e)
+		{
+			// It failed, nothing to release
+		}
+	}
+	
+	// Blocking call
+	// Request the url and return a copy of the response body
+	public static byte[] requestByteArray(String url, int timeout) throws IOException
+	{
+		HttpResponse response = requestSuccessful(url, timeout);
+		
+		try
+		{
+			return response.getBody();
+		}
+		finally
+		{
+			response.release();
+		}
+	}
+	
+	// Blocking call
+	public static String requestString(String url, int timeout) throws IOException
+	{
+		HttpResponse response = requestSuccessful(url, timeout);
+		
+		try
+		{
+			return response.getBodyAsString();
+		}
+		finally
+		{
+			response.release();
+		}
 	}
 	
 	public static byte[] responseToByteArray(HttpURLConnection connection) 
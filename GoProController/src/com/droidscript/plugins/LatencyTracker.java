@@ -0,0 +1,150 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview Learns the round trip time to a camera and turns it into request timeouts.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+import java.util.Arrays;
+
+// Keeps an EWMA of the round trip time and of its deviation for each class of request,
+// the same way TCP sizes its retransmission timeout. The budget for a request is the
+// average plus four deviations, kept between a floor and a ceiling for the class.
+// The most recent round trips are also kept so percentiles can be read off them.
+public class LatencyTracker
+{
+	public enum RequestClass
+	{
+		COMMAND,	// Setting changes, shutter, power
+		STATUS,		// Bacpac and camera status polls
+		INFO		// Name, password and camera info
+	}
+
+	private static double GAIN = 0.125;
+	private static double DEVIATION_GAIN = 0.25;
+	private static int DEVIATION_MULTIPLIER = 4;
+
+	// Used until the first round trip has been measured
+	private static int[] INITIAL_BUDGET = { 5000, 5000, 5000 };
+	private static int[] MIN_BUDGET = { 1500, 1000, 1500 };
+	private static int[] MAX_BUDGET = { 10000, 5000, 10000 };
+
+	private static int RECENT_SAMPLES = 32;
+	private static int MIN_PERCENTILE_SAMPLES = 8;
+
+	private double[] m_average = new double[RequestClass.values().length];
+	private double[] m_deviation = new double[RequestClass.values().length];
+	private boolean[] m_measured = new boolean[RequestClass.values().length];
+
+	// Ring buffer of recent round trips for each class
+	private long[][] m_recent = new long[RequestClass.values().length][RECENT_SAMPLES];
+	private int[] m_recentCount = new int[RequestClass.values().length];
+	private int[] m_recentNext = new int[RequestClass.values().length];
+
+	// The timeout in milliseconds to allow for a request of this class, covering connect, send and read
+	public synchronized int getBudget(RequestClass requestClass)
+	{
+		int i = requestClass.ordinal();
+
+		if(!m_measured[i])
+		{
+			return INITIAL_BUDGET[i];
+		}
+
+		long budget = Math.round(m_average[i] + DEVIATION_MULTIPLIER * m_deviation[i]);
+
+		return (int)Math.max(MIN_BUDGET[i], Math.min(MAX_BUDGET[i], budget));
+	}
+
+	// The smoothed round trip time, or -1 if nothing has been measured yet
+	public synchronized long getAverage(RequestClass requestClass)
+	{
+		int i = requestClass.ordinal();
+
+		return m_measured[i] ? Math.round(m_average[i]) : -1;
+	}
+
+	// The round trip time in milliseconds that the given fraction (e.g. 0.95) of recent
+	// requests completed within, or -1 if there aren't enough samples yet
+	public synchronized long getPercentile(RequestClass requestClass, double fraction)
+	{
+		int i = requestClass.ordinal();
+		int count = m_recentCount[i];
+
+		if(count < MIN_PERCENTILE_SAMPLES)
+		{
+			return -1;
+		}
+
+		long[] sorted = new long[count];
+		System.arraycopy(m_recent[i], 0, sorted, 0, count);
+		Arrays.sort(sorted);
+
+		int index = (int)Math.ceil(fraction * count) - 1;
+
+		return sorted[Math.max(0, Math.min(count - 1, index))];
+	}
+
+	public synchronized void recordRoundTrip(RequestClass requestClass, long millis)
+	{
+		int i = requestClass.ordinal();
+
+		m_recent[i][m_recentNext[i]] = millis;
+		m_recentNext[i] = (m_recentNext[i] + 1) % RECENT_SAMPLES;
+		m_recentCount[i] = Math.min(m_recentCount[i] + 1, RECENT_SAMPLES);
+
+		if(!m_measured[i])
+		{
+			m_average[i] = millis;
+			m_deviation[i] = millis / 2.0;
+			m_measured[i] = true;
+		}
+		else
+		{
+			m_deviation[i] += DEVIATION_GAIN * (Math.abs(millis - m_average[i]) - m_deviation[i]);
+			m_average[i] += GAIN * (millis - m_average[i]);
+		}
+	}
+
+	// A request ran out of time, back off so the next one gets longer (up to the ceiling)
+	public synchronized void recordTimeout(RequestClass requestClass)
+	{
+		int i = requestClass.ordinal();
+
+		if(m_measured[i])
+		{
+			m_deviation[i] = Math.max(m_deviation[i] * 2, m_average[i]);
+		}
+	}
+
+	public synchronized void reset()
+	{
+		for(int i = 0; i < m_measured.length; ++i)
+		{
+			m_average[i] = 0;
+			m_deviation[i] = 0;
+			m_measured[i] = false;
+			m_recentCount[i] = 0;
+			m_recentNext[i] = 0;
+		}
+	}
+}
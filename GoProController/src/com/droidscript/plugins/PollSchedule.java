@@ -0,0 +1,109 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview How long to wait between polls of the bacpac status.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+// Polls quickly while the camera is booting or has just changed state, at the normal
+// interval once it settles, then backs off by doubling the interval up to the idle
+// interval while nothing changes. Polls are skipped while commands are getting answers,
+// since that already shows the camera is there. Each delay is measured from the end of
+// the last poll, so a stall is never followed by a burst of polls catching up.
+public class PollSchedule
+{
+	public static long DEFAULT_FAST_INTERVAL = 500;
+	public static long DEFAULT_INTERVAL = 2000;
+	public static long DEFAULT_IDLE_INTERVAL = 10000;
+	private static long MIN_INTERVAL = 100;
+
+	private static int FAST_POLLS = 3;	// Unchanged polls before slowing to the normal interval
+	private static int IDLE_POLLS = 10;	// Unchanged polls before backing off
+
+	private long m_fastInterval = DEFAULT_FAST_INTERVAL;
+	private long m_interval = DEFAULT_INTERVAL;
+	private long m_idleInterval = DEFAULT_IDLE_INTERVAL;
+
+	private long m_current = DEFAULT_FAST_INTERVAL;
+	private int m_unchanged = 0;
+	private volatile long m_lastActivity = 0;
+
+	// Intervals in milliseconds, fast <= interval <= idle
+	public synchronized void setIntervals(long fastInterval, long interval, long idleInterval)
+	{
+		m_fastInterval = Math.max(MIN_INTERVAL, fastInterval);
+		m_interval = Math.max(m_fastInterval, interval);
+		m_idleInterval = Math.max(m_interval, idleInterval);
+		m_current = Math.min(Math.max(m_current, m_fastInterval), m_idleInterval);
+	}
+
+	// Start again polling fast, for a camera that has just connected
+	public synchronized void reset()
+	{
+		m_current = m_fastInterval;
+		m_unchanged = 0;
+		m_lastActivity = 0;
+	}
+
+	// The camera answered a command
+	public void onActivity()
+	{
+		m_lastActivity = System.currentTimeMillis();
+	}
+
+	// True if the camera has answered a command within the current interval, so the poll can be skipped
+	public synchronized boolean isSuspended()
+	{
+		return System.currentTimeMillis() - m_lastActivity < m_current;
+	}
+
+	// A poll has finished, busy if the camera is booting or its state changed. Returns the delay before the next poll.
+	public synchronized long onPolled(boolean busy)
+	{
+		if(busy)
+		{
+			m_unchanged = 0;
+			m_current = m_fastInterval;
+		}
+		else
+		{
+			m_unchanged++;
+
+			if(m_unchanged >= IDLE_POLLS)
+			{
+				m_current = Math.min(Math.max(m_current, m_interval) * 2, m_idleInterval);
+			}
+			else if(m_unchanged >= FAST_POLLS)
+			{
+				m_current = m_interval;
+			}
+		}
+
+		return m_current;
+	}
+
+	// The delay in milliseconds before the next poll
+	public synchronized long getInterval()
+	{
+		return m_current;
+	}
+}
@@ -0,0 +1,311 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview Runs a camera's work in priority order on separate lanes for control, status and bulk traffic.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Each kind of work has its own lane, with its own bounded queue and limit on how many of
+// its tasks run at once, so a slow status fetch doesn't hold up a setting and a media
+// transfer won't hold up either. Within a lane tasks are taken highest priority first,
+// in submission order within a priority. The threads that run the lanes come from an
+// ExecutorFactory, such as sharedPool() for a pool shared between lanes.
+public class PriorityDispatcher
+{
+	// Highest priority first
+	public enum Priority
+	{
+		URGENT,		// Shutter and power, run on the urgent lane
+		COMMAND,	// Settings and connecting
+		STATUS,		// Status requested by the script
+		BACKGROUND,	// Polling, behind status on the same lane
+		BULK		// Media transfers
+	}
+
+	public enum Lane
+	{
+		URGENT(1, 8),
+		CONTROL(1, 32),
+		STATUS(1, 8),	// One at a time, the camera's status views are reused between fetches
+		BULK(2, 16);
+
+		private int m_concurrency;
+		private int m_capacity;
+
+		private Lane(int concurrency, int capacity)
+		{
+			m_concurrency = concurrency;
+			m_capacity = capacity;
+		}
+
+		public static Lane forPriority(Priority priority)
+		{
+			switch(priority)
+			{
+			case URGENT:
+				return URGENT;
+			case COMMAND:
+				return CONTROL;
+			case BULK:
+				return BULK;
+			default:
+				return STATUS;
+			}
+		}
+	}
+
+	// Where lanes get their threads from
+	public interface ExecutorFactory
+	{
+		Executor create(Lane lane, int concurrency);
+
+		// The dispatcher is finished with an executor from create
+		void release(Executor executor);
+	}
+
+	// Every lane runs on the given pool, which the caller owns and shuts down. The lanes'
+	// concurrency limits still apply, and a pool smaller than their total makes them share.
+	public static ExecutorFactory sharedPool(final Executor pool)
+	{
+		return new ExecutorFactory() {
+			@Override
+			public Executor create(Lane lane, int concurrency)
+			{
+				return pool;
+			}
+
+			@Override
+			public void release(Executor executor)
+			{
+			}
+		};
+	}
+
+	// How busy a lane has been since the dispatcher was created
+	public static class LaneStats
+	{
+		public Lane lane;
+		public int concurrency;
+		public int capacity;
+		public int queued;
+		public int running;
+		public long completed;
+		public long rejected;
+		public double utilization;	// Fraction of the lane's capacity to run tasks that was used, 0 - 1
+		public long averageWait;	// Milliseconds from submission to running, on average
+
+		@Override
+		public String toString()
+		{
+			return lane + ": " + running + "/" + concurrency + " running, " + queued + "/" + capacity + " queued, " + completed + " completed, "
+					+ rejected + " rejected, " + Math.round(utilization * 100) + "% utilization, " + averageWait + "ms average wait";
+		}
+	}
+
+	// Orders queued tasks by priority, then by submission order
+	private static class PrioritizedTask extends FutureTask<Object> implements Comparable<PrioritizedTask>
+	{
+		private Priority m_priority;
+		private long m_sequence;
+		private long m_queuedAt = System.currentTimeMillis();
+
+		public PrioritizedTask(Runnable task, Priority priority, long sequence)
+		{
+			super(task, null);
+
+			m_priority = priority;
+			m_sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(PrioritizedTask other)
+		{
+			if(m_priority != other.m_priority)
+			{
+				return m_priority.compareTo(other.m_priority);
+			}
+
+			return (m_sequence < other.m_sequence) ? -1 : ((m_sequence == other.m_sequence) ? 0 : 1);
+		}
+	}
+
+	// A lane's queue, and the workers running it on the lane's executor. A worker keeps taking
+	// tasks until the queue is empty, and no more workers run than the lane's concurrency.
+	private class LaneQueue implements Runnable
+	{
+		private Lane m_lane;
+		private Executor m_executor;
+		private PriorityQueue<PrioritizedTask> m_queue = new PriorityQueue<PrioritizedTask>();
+		private int m_running = 0;
+		private boolean m_shutdown = false;
+
+		private long m_created = System.currentTimeMillis();
+		private long m_completed = 0;
+		private long m_rejected = 0;
+		private long m_busyTime = 0;
+		private long m_waitTime = 0;
+
+		public LaneQueue(Lane lane)
+		{
+			m_lane = lane;
+			m_executor = m_executorFactory.create(lane, lane.m_concurrency);
+		}
+
+		public synchronized void submit(PrioritizedTask task)
+		{
+			if(m_shutdown)
+			{
+				throw new RejectedExecutionException(m_lane + " lane has shut down");
+			}
+
+			if(m_queue.size() >= m_lane.m_capacity)
+			{
+				m_rejected++;
+				throw new RejectedExecutionException(m_lane + " lane is full");
+			}
+
+			m_queue.add(task);
+
+			if(m_running < m_lane.m_concurrency)
+			{
+				m_running++;
+
+				try
+				{
+					m_executor.execute(this);
+				}
+				catch(RejectedExecutionException e)
+				{
+					m_running--;
+					m_queue.remove(task);
+					m_rejected++;
+					throw e;
+				}
+			}
+		}
+
+		@Override
+		public void run()
+		{
+			while(true)
+			{
+				PrioritizedTask task;
+
+				synchronized(this)
+				{
+					task = m_queue.poll();
+
+					if(task == null)
+					{
+						m_running--;
+						return;
+					}
+				}
+
+				long start = System.currentTimeMillis();
+				task.run(); // Exceptions end up in the task's future
+
+				synchronized(this)
+				{
+					long end = System.currentTimeMillis();
+					m_busyTime += end - start;
+					m_waitTime += start - task.m_queuedAt;
+					m_completed++;
+				}
+			}
+		}
+
+		public synchronized LaneStats getStats()
+		{
+			LaneStats stats = new LaneStats();
+			long elapsed = Math.max(1, System.currentTimeMillis() - m_created);
+
+			stats.lane = m_lane;
+			stats.concurrency = m_lane.m_concurrency;
+			stats.capacity = m_lane.m_capacity;
+			stats.queued = m_queue.size();
+			stats.running = m_running;
+			stats.completed = m_completed;
+			stats.rejected = m_rejected;
+			stats.utilization = Math.min(1.0, (double)m_busyTime / (elapsed * m_lane.m_concurrency));
+			stats.averageWait = (m_completed > 0) ? m_waitTime / m_completed : 0;
+
+			return stats;
+		}
+
+		public void shutdown()
+		{
+			synchronized(this)
+			{
+				m_shutdown = true;
+			}
+
+			m_executorFactory.release(m_executor);
+		}
+	}
+
+	private ExecutorFactory m_executorFactory;
+	private LaneQueue[] m_lanes = new LaneQueue[Lane.values().length];
+	private AtomicLong m_sequence = new AtomicLong();
+
+	public PriorityDispatcher(ExecutorFactory executorFactory)
+	{
+		m_executorFactory = executorFactory;
+
+		for(Lane lane : Lane.values())
+		{
+			m_lanes[lane.ordinal()] = new LaneQueue(lane);
+		}
+	}
+
+	// Queue the task on the lane for its priority. Throws a RejectedExecutionException if
+	// that lane's queue is full or the dispatcher has been shut down.
+	public Future<?> submit(Priority priority, Runnable task)
+	{
+		PrioritizedTask prioritized = new PrioritizedTask(task, priority, m_sequence.getAndIncrement());
+
+		m_lanes[Lane.forPriority(priority).ordinal()].submit(prioritized);
+
+		return prioritized;
+	}
+
+	public LaneStats getStats(Lane lane)
+	{
+		return m_lanes[lane.ordinal()].getStats();
+	}
+
+	// Tasks already queued still run, new ones are rejected
+	public void shutdown()
+	{
+		for(LaneQueue lane : m_lanes)
+		{
+			lane.shutdown();
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview How often, and how soon, to retry a failed idempotent request.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+
+// Exponential backoff with full jitter: the wait before retry n is a random time between
+// zero and baseDelay * 2^(n-1), capped at maxDelay. The randomness stops several requests
+// that failed together (one dropped Wi-Fi burst) from all retrying at the same instant.
+public class RetryPolicy
+{
+	public static int DEFAULT_MAX_ATTEMPTS = 3;
+	public static long DEFAULT_BASE_DELAY = 100;
+	public static long DEFAULT_MAX_DELAY = 1000;
+
+	private int m_maxAttempts;
+	private long m_baseDelay;
+	private long m_maxDelay;
+	private Random m_random = new Random();
+
+	public RetryPolicy()
+	{
+		this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+	}
+
+	public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay)
+	{
+		m_maxAttempts = Math.max(1, maxAttempts);
+		m_baseDelay = baseDelay;
+		m_maxDelay = maxDelay;
+	}
+
+	// True if the request should be tried again after failing with the error on the given attempt (1 = first)
+	public boolean shouldRetry(int attempt, IOException error)
+	{
+		// The camera answered, asking again will get the same answer
+		if(error instanceof HttpStatusException)
+		{
+			return false;
+		}
+
+		return attempt < m_maxAttempts;
+	}
+
+	// The jittered delay in milliseconds before the retry following the given attempt
+	public long getDelay(int attempt)
+	{
+		long cap = m_baseDelay << Math.min(attempt - 1, 16);
+		cap = Math.min(cap, m_maxDelay);
+
+		if(cap <= 0)
+		{
+			return 0;
+		}
+
+		synchronized(m_random)
+		{
+			return (long)(m_random.nextDouble() * cap);
+		}
+	}
+
+	// Blocking call
+	// Wait out the delay before the retry following the given attempt
+	public void backoff(int attempt) throws InterruptedIOException
+	{
+		try
+		{
+			Thread.sleep(getDelay(attempt));
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting to retry");
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * @license
+ * DroidScript GoPro Controller Plugin
+ *
+ * Copyright 2015 droidscript.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * @fileoverview Reusable unsigned view over a range of bytes, used to decode status responses in place.
+ * @author Chris Hopkin
+ */
+
+package com.droidscript.plugins;
+
+import java.nio.ByteBuffer;
+
+public class UnsignedByteView
+{
+	private byte[] m_bytes;
+	private int m_offset;
+	private int m_length;
+
+	// View the bytes between the buffer's position and limit, the buffer must be heap backed
+	public UnsignedByteView wrap(ByteBuffer buffer)
+	{
+		return wrap(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+	}
+
+	public UnsignedByteView wrap(byte[] bytes, int offset, int length)
+	{
+		m_bytes = bytes;
+		m_offset = offset;
+		m_length = length;
+
+		return this;
+	}
+
+	public int length()
+	{
+		return m_length;
+	}
+
+	// True if the viewed bytes are the same as the array, which may be null
+	public boolean contentEquals(byte[] bytes)
+	{
+		if(bytes == null || bytes.length != m_length)
+		{
+			return false;
+		}
+
+		for(int i = 0; i < m_length; ++i)
+		{
+			if(bytes[i] != m_bytes[m_offset + i])
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	// A copy of the viewed bytes, which stays valid after the buffer is reused
+	public byte[] toByteArray()
+	{
+		byte[] bytes = new byte[m_length];
+		System.arraycopy(m_bytes, m_offset, bytes, 0, m_length);
+
+		return bytes;
+	}
+
+	// The byte at index as 0 - 255
+	public int get(int index)
+	{
+		if(index < 0 || index >= m_length)
+		{
+			throw new IndexOutOfBoundsException("Index " + index + ", length " + m_length);
+		}
+
+		return m_bytes[m_offset + index] & 0xFF;
+	}
+}